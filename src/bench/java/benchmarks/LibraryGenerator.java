@@ -0,0 +1,97 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import models.Album;
+import models.Artist;
+import models.MusicLibrary;
+import models.Playlist;
+import models.Song;
+
+/**
+ * Builds synthetic music libraries for the benchmarks.
+ * Libraries are deterministic for a given size: roughly 10 songs per album and 10 albums per
+ * artist, titles drawn from a small vocabulary so searches hit realistic numbers of songs,
+ * and one playlist of 50 songs per 1000 songs.
+ */
+public class LibraryGenerator {
+
+    static final String[] GENRES = {
+        "Rock", "Pop", "Jazz", "Blues", "Classical", "Electronic", "Hip-Hop", "Country",
+        "Folk", "Metal", "Reggae", "Soul", "Funk", "Ambient", "Punk", "Latin"
+    };
+    static final String[] WORDS = {
+        "love", "night", "blue", "river", "fire", "heart", "road", "dream", "light", "rain",
+        "summer", "city", "wild", "gold", "shadow", "ocean", "song", "home", "star", "echo"
+    };
+
+    private static final int SONGS_PER_ALBUM = 10;
+    private static final int ALBUMS_PER_ARTIST = 10;
+    private static final long SEED = 42L;
+
+    /*
+     * Create the songs of a library of the given size, with shared artist and album instances
+     */
+    public static List<Song> songs(int size) {
+        Random random = new Random(SEED);
+        List<Song> songs = new ArrayList<>(size);
+        Artist artist = null;
+        Album album = null;
+        for (int i = 0; i < size; i++) {
+            int albumIndex = i / SONGS_PER_ALBUM;
+            if (i % (SONGS_PER_ALBUM * ALBUMS_PER_ARTIST) == 0) {
+                artist = new Artist("Artist " + (albumIndex / ALBUMS_PER_ARTIST));
+            }
+            if (i % SONGS_PER_ALBUM == 0) {
+                album = new Album(WORDS[random.nextInt(WORDS.length)] + " Album " + albumIndex, artist);
+                artist.addAlbum(album);
+            }
+            songs.add(song(random, i, artist, album));
+        }
+        return songs;
+    }
+
+    /*
+     * Create songs that are not part of a generated library, e.g. to be added during a benchmark
+     */
+    public static List<Song> extraSongs(int count, int offset) {
+        Random random = new Random(SEED + offset);
+        Artist artist = new Artist("Extra Artist " + offset);
+        Album album = new Album("Extra Album " + offset, artist);
+        List<Song> songs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            songs.add(song(random, offset + i, artist, album));
+        }
+        return songs;
+    }
+
+    /*
+     * Replace the content of the library with a generated library of the given size
+     */
+    public static void populate(MusicLibrary library, int size) {
+        library.clearLibrary();
+        List<Song> songs = songs(size);
+        library.addSongs(songs);
+        Random random = new Random(SEED);
+        for (int p = 0; p < Math.max(1, size / 1000); p++) {
+            Playlist playlist = new Playlist("Playlist " + p);
+            for (int i = 0; i < 50 && i < songs.size(); i++) {
+                playlist.addSong(songs.get(random.nextInt(songs.size())));
+            }
+            library.addPlaylist(playlist);
+        }
+    }
+
+    private static Song song(Random random, int index, Artist artist, Album album) {
+        String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + index;
+        Song song = new Song(title, artist, album, 120 + random.nextInt(300));
+        song.setGenre(GENRES[random.nextInt(GENRES.length)]);
+        song.setTrackNumber(index % SONGS_PER_ALBUM + 1);
+        song.setFileInfo("/music/" + artist.getName() + "/" + album.getTitle() + "/" + index + ".mp3",
+                3_000_000L + random.nextInt(7_000_000), 1_600_000_000_000L + index);
+        album.addSong(song);
+        return song;
+    }
+}
@@ -0,0 +1,145 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import models.Album;
+import models.Artist;
+import models.MusicLibrary;
+import models.Song;
+
+/**
+ * Benchmarks for the MusicLibrary mutation, search and browse operations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MusicLibraryBenchmark {
+
+    private static final int BATCH = 1000; // songs added or removed per invocation
+
+    /**
+     * Shared generated library
+     */
+    @State(Scope.Benchmark)
+    public static class Library {
+
+        @Param({"10000", "100000", "1000000"})
+        int size;
+
+        MusicLibrary library;
+        Artist artist; // an artist from the middle of the library
+        Album album;
+        List<Song> batch; // songs outside the generated library
+
+        @Setup(Level.Trial)
+        public void setup() {
+            library = MusicLibrary.getInstance();
+            LibraryGenerator.populate(library, size);
+            Song middle = library.getAllSongs().get(size / 2);
+            artist = middle.getArtist();
+            album = middle.getAlbum();
+            batch = LibraryGenerator.extraSongs(BATCH, size);
+        }
+    }
+
+    /**
+     * Library state in which the batch songs are absent before every invocation
+     */
+    @State(Scope.Benchmark)
+    public static class BatchAbsent {
+
+        @Setup(Level.Invocation)
+        public void setup(Library state) {
+            for (Song song : state.batch) {
+                state.library.removeSong(song);
+            }
+        }
+    }
+
+    /**
+     * Library state in which the batch songs are present before every invocation
+     */
+    @State(Scope.Benchmark)
+    public static class BatchPresent {
+
+        @Setup(Level.Invocation)
+        public void setup(Library state) {
+            for (Song song : state.batch) {
+                state.library.addSong(song);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void addSong(Library state, BatchAbsent absent) {
+        for (Song song : state.batch) {
+            state.library.addSong(song);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void removeSong(Library state, BatchPresent present) {
+        for (Song song : state.batch) {
+            state.library.removeSong(song);
+        }
+    }
+
+    @Benchmark
+    public List<Song> searchSongsCommonWord(Library state) {
+        return state.library.searchSongs("love");
+    }
+
+    @Benchmark
+    public List<Song> searchSongsSubstring(Library state) {
+        return state.library.searchSongs("ive");
+    }
+
+    @Benchmark
+    public List<Song> searchSongsCommonWordFirstPage(Library state) {
+        return state.library.searchSongs("love", 100);
+    }
+
+    @Benchmark
+    public List<Song> searchSongsNoMatch(Library state) {
+        return state.library.searchSongs("zzyzx");
+    }
+
+    @Benchmark
+    public List<Song> getSongsByArtist(Library state) {
+        return state.library.getSongsByArtist(state.artist);
+    }
+
+    @Benchmark
+    public List<Song> getSongsByAlbum(Library state) {
+        return state.library.getSongsByAlbum(state.album);
+    }
+
+    @Benchmark
+    public List<Song> getSongsByGenre(Library state) {
+        return state.library.getSongsByGenre(LibraryGenerator.GENRES[3]);
+    }
+
+    @Benchmark
+    public List<String> getAllGenres(Library state) {
+        return state.library.getAllGenres();
+    }
+}
@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import models.MusicLibrary;
+import models.Playlist;
+import utils.MusicLibraryIO;
+import utils.PlaylistIO;
+
+/**
+ * Benchmarks for saving and loading the library snapshot (binary and JSON) and the playlists file.
+ * PlaylistIO and the default snapshot path write to the working directory, which the bench
+ * profile sets to target/.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    /**
+     * Generated library, with every file already written once so the load benchmarks have input
+     */
+    @State(Scope.Benchmark)
+    public static class Library {
+
+        @Param({"10000", "100000", "1000000"})
+        int size;
+
+        MusicLibrary library;
+        List<Playlist> playlists;
+        File jsonFile;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            library = MusicLibrary.getInstance();
+            LibraryGenerator.populate(library, size);
+            playlists = library.getAllPlaylists();
+            jsonFile = File.createTempFile("bench-library", ".json");
+            MusicLibraryIO.saveLibrary(library);
+            MusicLibraryIO.saveLibrary(library, jsonFile);
+            PlaylistIO.savePlaylists(playlists);
+        }
+
+        @Setup(Level.Iteration)
+        public void restore() {
+            // Load benchmarks replace the library content; start every iteration from the full library
+            if (library.getTotalSongCount() != size) {
+                LibraryGenerator.populate(library, size);
+                playlists = library.getAllPlaylists();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            jsonFile.delete();
+        }
+    }
+
+    @Benchmark
+    public void saveBinary(Library state) throws IOException {
+        MusicLibraryIO.saveLibrary(state.library);
+    }
+
+    @Benchmark
+    public MusicLibrary loadBinary(Library state) throws IOException {
+        MusicLibraryIO.loadLibrary(state.library);
+        return state.library;
+    }
+
+    @Benchmark
+    public void saveJson(Library state) throws IOException {
+        MusicLibraryIO.saveLibrary(state.library, state.jsonFile);
+    }
+
+    @Benchmark
+    public MusicLibrary loadJson(Library state) throws IOException {
+        MusicLibraryIO.loadLibrary(state.library, state.jsonFile);
+        return state.library;
+    }
+
+    @Benchmark
+    public void savePlaylists(Library state) throws IOException {
+        PlaylistIO.savePlaylists(state.playlists);
+    }
+
+    @Benchmark
+    public List<Playlist> loadPlaylists() throws IOException {
+        return PlaylistIO.loadPlaylists();
+    }
+}
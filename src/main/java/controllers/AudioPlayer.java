@@ -4,15 +4,13 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.FloatControl;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
@@ -20,13 +18,23 @@ import javafx.application.Platform;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import models.Song;
+import utils.Metrics;
 
 /**
  * Handles audio playback functionality, including play, pause, resume, stop, seek, and volume control.
- * Supports both Java Sound API (Clip) and JavaFX MediaPlayer for broader format compatibility.
+ * Supports both Java Sound API (streamed through a SourceDataLine) and JavaFX MediaPlayer for broader
+ * format compatibility.
  */
 public class AudioPlayer {
 
+    private static final Metrics.Timer TIME_TO_FIRST_AUDIO = Metrics.getInstance().timer("playback_start_seconds",
+            "Time from a play request to the first frame written to the audio line");
+    private static final Metrics.Timer GAPLESS_HANDOFF = Metrics.getInstance().timer("playback_gapless_handoff_seconds",
+            "Gap between the last frame of a track and the first frame of the gapless next one being queued");
+    private static final long MIN_INTERVAL_MILLIS = 10; // fastest configurable position update rate
+    private static final long SEEK_INTERVAL_MILLIS = 25; // position update rate right after a seek
+    private static final long SEEK_BOOST_NANOS = 500_000_000L; // how long the faster rate lasts after a seek
+
     public enum PlaybackState { STOPPED, PLAYING, PAUSED, BUFFERING }
     private volatile PlaybackState playbackState = PlaybackState.STOPPED; // current playback state
     private Song currentSong; // currently playing song
@@ -34,8 +42,23 @@ public class AudioPlayer {
     private float volume = 0.5f; // 0.0 to 1.0
 
     private List<AudioPlayerListener> listeners; // registered event listeners for playback events
-    private Clip audioClip; // Java Sound Clip for low-latency playback
-    private volatile MediaPlayer mediaPlayerFallback; // JavaFX MediaPlayer for broader format support (used if Clip fails)
+    private volatile StreamingPlayback streaming; // Java Sound playback, streamed with constant memory
+    private StreamingPlayback prepared; // pre-decoded head of the predicted next song, if any
+    private Song preparedSong; // song that prepared belongs to
+    private long prepareGeneration; // guarded by this; bumped to drop a preparation still being opened
+    private volatile long lastHandoffNanos = -1; // gap between two gapless tracks' frames being queued, -1 if none yet
+    private final StreamingPlayback.Listener streamListener = new StreamingPlayback.Listener() {
+        @Override
+        public void onEnded(StreamingPlayback playback) {
+            onStreamEnded(playback);
+        }
+
+        @Override
+        public void onHandoff(StreamingPlayback from, StreamingPlayback to, long handoffNanos) {
+            onStreamHandoff(from, to, handoffNanos);
+        }
+    };
+    private volatile MediaPlayer mediaPlayerFallback; // JavaFX MediaPlayer for broader format support (used if Java Sound fails)
     private volatile boolean usingMediaFallback = false; // whether currently using MediaPlayer fallback
     // Scheduler for position tracking to avoid manual Thread and Thread.sleep usage
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -43,7 +66,18 @@ public class AudioPlayer {
         t.setDaemon(true);
         return t;
     });
-    private ScheduledFuture<?> positionTask;
+    // Opens and prefetches the next song, so disk I/O never holds up the scheduler or the lock
+    private final ExecutorService preparer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "AudioPlayer-Preparer");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> positionTask; // guarded by this; next position update
+    private long trackingGeneration; // guarded by this; bumped to retire the running tick chain
+    private volatile long playingIntervalMillis = 100; // position update rate while playing with the UI visible
+    private volatile long hiddenIntervalMillis = 1000; // position update rate while the UI is hidden
+    private volatile boolean uiVisible = true; // whether anyone is looking at the position
+    private volatile long seekBoostUntil = System.nanoTime(); // ticks run at SEEK_INTERVAL_MILLIS until this time
 
     /*
      * Constructor
@@ -81,6 +115,7 @@ public class AudioPlayer {
      * Load and play a song
      */
     public boolean playSong(Song song) {
+        long requested = System.nanoTime();
         // Validate song and filepath
         if (song == null || song.getFilePath() == null) {
             notifyError("Invalid song or file path");
@@ -93,20 +128,25 @@ public class AudioPlayer {
             return false;
         }
 
-        // Try Java Sound Clip first (fast, low-latency). If it fails for format reasons, try JavaFX MediaPlayer.
+        // Try streaming through Java Sound first (low latency, constant memory). If it fails for format reasons, try JavaFX MediaPlayer.
+        StreamingPlayback reuse = takePrepared(song); // already opened and partly decoded
         stop();
         try {
-            AudioInputStream audioStream = AudioSystem.getAudioInputStream(audioFile);
-            audioClip = AudioSystem.getClip();
-            audioClip.open(audioStream);
+            streaming = reuse != null ? reuse : StreamingPlayback.open(audioFile, song.getDurationSeconds() * 1_000_000L, streamListener);
 
             usingMediaFallback = false;
-            setVolumeInternal(volume);
-            audioClip.start();
-
             markAsPlaying(song);
+            streaming.timeFirstWrite(TIME_TO_FIRST_AUDIO, requested);
+            streaming.start();
+            setVolumeInternal(volume);
+            // Keep the decoded track around for replaying, looping and coming back to it
+            PcmCache.getInstance().load(audioFile);
             return true;
         } catch (UnsupportedAudioFileException | LineUnavailableException | IOException e) {
+            if (streaming != null) {
+                streaming.close();
+                streaming = null;
+            }
             // Fallback to JavaFX MediaPlayer for broader format support
             try {
                 usingMediaFallback = true;
@@ -126,13 +166,150 @@ public class AudioPlayer {
                 Platform.runLater(mp::play);
                 return true;
             } catch (Exception ex) {
-                // If neither Clip nor MediaPlayer works, report error
+                // If neither Java Sound nor MediaPlayer works, report error
                 notifyError("Playback error: " + ex.getMessage());
                 return false;
             }
         }
     }
 
+    /*
+     * Called from the output thread once a streamed track has played to the end
+     */
+    private void onStreamEnded(StreamingPlayback playback) {
+        // Report on the tracker thread, since listeners typically start the next song from here
+        scheduler.execute(() -> {
+            if (playback != streaming || playbackState != PlaybackState.PLAYING) {
+                return; // stopped or replaced meanwhile
+            }
+            playbackState = PlaybackState.STOPPED;
+            notifyPositionChanged(playback.getLengthUs(), playback.getLengthUs());
+            notifyPlayStateChanged(playbackState);
+            notifySongEnded();
+        });
+    }
+
+    /*
+     * Called from the output thread when a track continued gaplessly into the prepared one
+     */
+    private void onStreamHandoff(StreamingPlayback from, StreamingPlayback to, long handoffNanos) {
+        scheduler.execute(() -> {
+            Song song;
+            synchronized (this) {
+                if (from != streaming || to != prepared) {
+                    return; // stopped or replaced meanwhile
+                }
+                song = preparedSong;
+                prepared = null;
+                preparedSong = null;
+                streaming = to;
+            }
+            lastHandoffNanos = handoffNanos;
+            GAPLESS_HANDOFF.record(handoffNanos);
+            from.close();
+            // Announce the new song once its first frame is actually heard
+            scheduler.schedule(() -> {
+                if (streaming == to) {
+                    currentSong = song;
+                    notifySongChanged(song);
+                }
+            }, to.getStartDelayUs(), TimeUnit.MICROSECONDS);
+        });
+    }
+
+    /**
+     * Set the song expected to play after the current one. Its file is opened and the start
+     * of it decoded in the background, so that it can follow the current song without a gap
+     * (when both share the same audio format) or at least start faster; the whole of it is
+     * decoded into the PcmCache after the current song. Pass null to clear.
+     */
+    public void setNextSong(Song song) {
+        preparer.execute(() -> prepareNext(song));
+    }
+
+    /*
+     * Open and prefetch the next song without holding the lock, then publish it if nothing
+     * changed meanwhile, so playSong and the tracker thread never wait for the disk
+     */
+    private void prepareNext(Song song) {
+        StreamingPlayback current;
+        long generation;
+        synchronized (this) {
+            if (song != null && song == preparedSong) {
+                return;
+            }
+        }
+        discardPrepared();
+        synchronized (this) {
+            current = streaming;
+            generation = prepareGeneration;
+        }
+        if (song == null || current == null || song.getFilePath() == null || !new File(song.getFilePath()).exists()) {
+            return;
+        }
+        PcmCache.getInstance().load(new File(song.getFilePath()));
+        StreamingPlayback playback;
+        try {
+            playback = StreamingPlayback.open(new File(song.getFilePath()),
+                    song.getDurationSeconds() * 1_000_000L, streamListener);
+            playback.prefetch();
+        } catch (UnsupportedAudioFileException | IOException e) {
+            // Not playable through Java Sound; playSong will fall back to MediaPlayer when it gets there
+            return;
+        }
+        synchronized (this) {
+            if (generation == prepareGeneration && current == streaming) {
+                prepared = playback;
+                preparedSong = song;
+                // A different format cannot share the line; the prefetched head still saves time in playSong
+                current.setNext(playback);
+                return;
+            }
+        }
+        playback.close(); // taken, discarded or replaced while it was being opened
+    }
+
+    /*
+     * Hand out the prepared playback if it belongs to the given song
+     */
+    private synchronized StreamingPlayback takePrepared(Song song) {
+        prepareGeneration++;
+        if (prepared == null || song != preparedSong) {
+            return null;
+        }
+        StreamingPlayback playback = prepared;
+        prepared = null;
+        preparedSong = null;
+        if (streaming != null) {
+            streaming.setNext(null);
+        }
+        return playback;
+    }
+
+    private void discardPrepared() {
+        StreamingPlayback discarded;
+        synchronized (this) {
+            prepareGeneration++;
+            if (streaming != null) {
+                streaming.setNext(null);
+            }
+            discarded = prepared;
+            prepared = null;
+            preparedSong = null;
+        }
+        if (discarded != null) {
+            discarded.close();
+        }
+    }
+
+    /*
+     * Time in nanoseconds between the last frame of one track and the first frame of the next
+     * being queued during the most recent gapless transition, or -1 if none happened yet
+     */
+    public long getLastHandoffNanos() {
+        return lastHandoffNanos;
+    }
+
     /**
      * Common actions to perform when playback for a song has started.
      */
@@ -149,10 +326,10 @@ public class AudioPlayer {
      * Pause current playback
      */
     public void pause() {
-        // If using Clip
-        if (audioClip != null && playbackState == PlaybackState.PLAYING) {
-            pausePosition = audioClip.getMicrosecondPosition();
-            audioClip.stop();
+        // If using Java Sound
+        if (streaming != null && playbackState == PlaybackState.PLAYING) {
+            pausePosition = streaming.getPositionUs();
+            streaming.pause();
             playbackState = PlaybackState.PAUSED;
             notifyPlayStateChanged(playbackState);
         }
@@ -177,10 +354,9 @@ public class AudioPlayer {
      * Resume paused playback
      */
     public void resume() {
-        // If using Clip
-        if (audioClip != null && playbackState == PlaybackState.PAUSED) {
-            audioClip.setMicrosecondPosition(pausePosition);
-            audioClip.start();
+        // If using Java Sound; the line resumes from where it stopped
+        if (streaming != null && playbackState == PlaybackState.PAUSED) {
+            streaming.resume();
             playbackState = PlaybackState.PLAYING;
             notifyPlayStateChanged(playbackState);
             startPositionTracking();
@@ -207,11 +383,14 @@ public class AudioPlayer {
      * Stop current playback
      */
     public void stop() {
-        // If using Clip
-        if (audioClip != null) {
-            audioClip.stop();
-            audioClip.close();
-            audioClip = null;
+        // Release the prepared next song before the line it might be handed to
+        discardPrepared();
+
+        // If using Java Sound
+        if (streaming != null) {
+            StreamingPlayback playback = streaming;
+            streaming = null;
+            playback.close();
         }
         
         // If using MediaPlayer fallback
@@ -234,13 +413,7 @@ public class AudioPlayer {
             }
         }
 
-        // cancel position tracking task if active
-        if (positionTask != null) {
-            try {
-                positionTask.cancel(true);
-            } catch (Exception ignored) {}
-            positionTask = null;
-        }
+        stopPositionTracking();
 
         playbackState = PlaybackState.STOPPED;
         pausePosition = 0;
@@ -251,12 +424,21 @@ public class AudioPlayer {
      * Seek to a specific position (in microseconds)
      */
     public void seek(long position) {
-        // If using Clip
-        if (audioClip != null) {
-            long duration = audioClip.getMicrosecondLength();
-            if (position >= 0 && position <= duration) {
-                audioClip.setMicrosecondPosition(position);
-                pausePosition = position;
+        // If using Java Sound
+        if (streaming != null) {
+            long duration = streaming.getLengthUs();
+            if (position >= 0 && (duration <= 0 || position <= duration)) {
+                try {
+                    seekBoostUntil = System.nanoTime() + SEEK_BOOST_NANOS;
+                    streaming.seek(position);
+                    pausePosition = position;
+                    notifyPositionChanged(position, duration);
+                    if (playbackState == PlaybackState.PLAYING) {
+                        startPositionTracking();
+                    }
+                } catch (UnsupportedAudioFileException | IOException e) {
+                    notifyError("Seek failed: " + e.getMessage());
+                }
             }
         }        
         
@@ -285,16 +467,9 @@ public class AudioPlayer {
      * Internal method to apply volume to the current playback mechanism
      */
     private void setVolumeInternal(float volume) {
-        // If using Clip
-        if (audioClip != null) {
-            try {
-                FloatControl volumeControl = (FloatControl) audioClip.getControl(FloatControl.Type.MASTER_GAIN);
-                // Convert 0.0-1.0 to decibel range
-                float min = volumeControl.getMinimum();
-                float max = volumeControl.getMaximum();
-                float gain = min + (max - min) * volume;
-                volumeControl.setValue(gain);
-            } catch (IllegalArgumentException e) {
+        // If using Java Sound
+        if (streaming != null) {
+            if (!streaming.setVolume(volume)) {
                 notifyError("Volume control not supported");
             }
         }
@@ -312,54 +487,102 @@ public class AudioPlayer {
         }
     }
 
+    /**
+     * Set how often position updates are sent while playing: playingMillis while the UI is
+     * visible, hiddenMillis while it is hidden (e.g. the window is minimized)
+     */
+    public void setPositionUpdateIntervals(long playingMillis, long hiddenMillis) {
+        playingIntervalMillis = Math.max(MIN_INTERVAL_MILLIS, playingMillis);
+        hiddenIntervalMillis = Math.max(playingIntervalMillis, hiddenMillis);
+    }
+
+    /**
+     * Tell the player whether its position is currently on screen; position updates slow
+     * down while it is not
+     */
+    public void setUiVisible(boolean visible) {
+        boolean wasVisible = uiVisible;
+        uiVisible = visible;
+        if (visible && !wasVisible && playbackState == PlaybackState.PLAYING) {
+            startPositionTracking(); // catch up now instead of after a slow tick
+        }
+    }
+
     /*
-     * Spawn thread to track playback position and notify listeners
+     * (Re)start sending position updates, starting immediately. Each tick schedules the next
+     * one at the current rate, so the rate follows visibility and seeks, and no ticks are
+     * sent while paused or stopped.
      */
-    private void startPositionTracking() {
-        // cancel previous task if any
+    private synchronized void startPositionTracking() {
+        long generation = ++trackingGeneration;
+        if (positionTask != null) {
+            positionTask.cancel(false);
+        }
+        try {
+            positionTask = scheduler.schedule(() -> trackPosition(generation), 0, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            positionTask = null; // shut down
+        }
+    }
+
+    private synchronized void stopPositionTracking() {
+        trackingGeneration++;
         if (positionTask != null) {
-            try { positionTask.cancel(true); } catch (Exception ignored) {}
+            positionTask.cancel(false);
             positionTask = null;
         }
+    }
 
-        positionTask = scheduler.scheduleAtFixedRate(() -> {
-            try {
-                if (playbackState != PlaybackState.PLAYING) return;
+    /*
+     * Tracker thread: report the position, then schedule the next tick unless tracking was
+     * restarted or stopped meanwhile
+     */
+    private void trackPosition(long generation) {
+        if (playbackState != PlaybackState.PLAYING) {
+            return; // resume() and playSong() restart tracking
+        }
+        try {
+            publishPosition();
+        } catch (Exception ignored) {}
+        synchronized (this) {
+            if (generation == trackingGeneration && playbackState == PlaybackState.PLAYING) {
+                positionTask = scheduler.schedule(() -> trackPosition(generation), nextTickMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
 
-                // If using Clip
-                if (audioClip != null && audioClip.isRunning()) {
-                    long position = audioClip.getMicrosecondPosition();
-                    long duration = audioClip.getMicrosecondLength();
-                    notifyPositionChanged(position, duration);
-                    // Check if playback has reached near the end
-                    if (position >= duration - 100000) {
-                        playbackState = PlaybackState.STOPPED;
-                        notifyPlayStateChanged(playbackState);
-                        notifySongEnded();
-                    }
-                }
+    /*
+     * Delay until the next position update: fast right after a seek, slow while hidden
+     */
+    long nextTickMillis() {
+        if (System.nanoTime() - seekBoostUntil < 0) {
+            return Math.min(SEEK_INTERVAL_MILLIS, playingIntervalMillis);
+        }
+        return uiVisible ? playingIntervalMillis : hiddenIntervalMillis;
+    }
 
-                // If using MediaPlayer fallback
-                else if (usingMediaFallback && mediaPlayerFallback != null) {
-                    final MediaPlayer mp = mediaPlayerFallback; // capture local ref
-                    if (mp != null) {
-                        try {
-                            javafx.util.Duration current = mp.getCurrentTime();
-                            javafx.util.Duration total = mp.getTotalDuration();
-                            long posUs = (long) (current.toMillis() * 1000);
-                            long durUs = total == null || total.toMillis() == 0 ? 0 : (long) (total.toMillis() * 1000);
-                            notifyPositionChanged(posUs, durUs);
-                            // Check if playback has reached near the end
-                            if (total != null && current.greaterThanOrEqualTo(total.subtract(javafx.util.Duration.millis(100)))) {
-                                playbackState = PlaybackState.STOPPED;
-                                notifyPlayStateChanged(playbackState);
-                                notifySongEnded();
-                            }
-                        } catch (Exception ignored) {}
-                    }
-                }
-            } catch (Exception ignored) {}
-        }, 0, 100, TimeUnit.MILLISECONDS);
+    /*
+     * Report the current position to listeners. The end of the track is not detected here:
+     * streamed playback reports it through onStreamEnded, MediaPlayer through its
+     * end-of-media event.
+     */
+    private void publishPosition() {
+        final StreamingPlayback playback = streaming; // capture local ref
+        if (playback != null) {
+            long duration = playback.getLengthUs();
+            long position = playbackState == PlaybackState.PAUSED ? pausePosition : playback.getPositionUs();
+            notifyPositionChanged(Math.min(position, duration > 0 ? duration : Long.MAX_VALUE), duration);
+        } else if (usingMediaFallback && mediaPlayerFallback != null) {
+            final MediaPlayer mp = mediaPlayerFallback; // capture local ref
+            if (mp != null) {
+                javafx.util.Duration current = mp.getCurrentTime();
+                javafx.util.Duration total = mp.getTotalDuration();
+                long posUs = (long) (current.toMillis() * 1000);
+                long durUs = total == null || total.toMillis() == 0 ? 0 : (long) (total.toMillis() * 1000);
+                notifyPositionChanged(posUs, durUs);
+            }
+        }
     }
 
     /*
@@ -389,9 +612,10 @@ public class AudioPlayer {
      * Returns current playback position in microseconds
      */
     public long getCurrentPosition() {
-        // If using Clip
-        if (audioClip != null) {
-            return playbackState == PlaybackState.PAUSED ? pausePosition : audioClip.getMicrosecondPosition();
+        // If using Java Sound
+        final StreamingPlayback playback = streaming; // capture
+        if (playback != null) {
+            return playbackState == PlaybackState.PAUSED ? pausePosition : playback.getPositionUs();
         }
 
         // If using MediaPlayer fallback
@@ -412,9 +636,10 @@ public class AudioPlayer {
      * Returns total duration of the current song in microseconds
      */
     public long getDuration() {
-        // If using Clip
-        if (audioClip != null) {
-            return audioClip.getMicrosecondLength();
+        // If using Java Sound
+        final StreamingPlayback playback = streaming; // capture
+        if (playback != null) {
+            return playback.getLengthUs();
         }
 
         // If using MediaPlayer fallback
@@ -484,14 +709,10 @@ public class AudioPlayer {
         try {
             stop();
         } catch (Exception ignored) {}
-        try {
-            if (positionTask != null) {
-                positionTask.cancel(true);
-                positionTask = null;
-            }
-        } catch (Exception ignored) {}
+        stopPositionTracking();
         try {
             scheduler.shutdownNow();
+            preparer.shutdownNow();
         } catch (Exception ignored) {}
     }
 }
\ No newline at end of file
@@ -0,0 +1,302 @@
+package controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import utils.ConfigManager;
+import utils.Metrics;
+
+/**
+ * Size-bounded cache of fully decoded PCM for recently played and upcoming tracks, so that
+ * replaying, looping or going back to a track reads memory instead of decoding the file again.
+ *
+ * The PCM is held in direct buffers outside the Java heap. Tracks are decoded in the
+ * background by a single low-priority thread (load()); StreamingPlayback reads a cached track
+ * through open(), which also makes seeking within it a constant-time skip. Least recently used
+ * tracks are dropped once the cache holds more than its limit (the "pcmCacheMegabytes"
+ * setting), and tracks larger than half the limit are never cached, so the current, previous
+ * and next tracks fit together.
+ */
+class PcmCache {
+
+    private static final int CHUNK_BYTES = 1 << 20; // size of each direct buffer a track is decoded into
+    private static final int READ_BYTES = 16 * 1024; // bytes decoded per read
+    private static final Metrics.Counter HITS = Metrics.getInstance().counter("playback_pcm_cache_hits_total",
+            "Tracks played from decoded PCM in the cache");
+    private static final Metrics.Counter MISSES = Metrics.getInstance().counter("playback_pcm_cache_misses_total",
+            "Tracks that had to be decoded from their file");
+    private static final Metrics.Timer LOAD_TIME = Metrics.getInstance().timer("playback_pcm_cache_load_seconds",
+            "Time to decode a whole track into the cache");
+    private static PcmCache instance; // Singleton instance
+
+    private final long maxBytes;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // guarded by this; in LRU order
+    private final Set<Key> loading = new HashSet<>(); // guarded by this; queued or being decoded
+    private long totalBytes; // guarded by this
+    private ExecutorService loader; // guarded by this; created on first load()
+
+    PcmCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /*
+     * Get the singleton cache, sized from the configuration
+     */
+    static synchronized PcmCache getInstance() {
+        if (instance == null) {
+            instance = new PcmCache(ConfigManager.getInstance().getInt("pcmCacheMegabytes", 256) * (1L << 20));
+            Metrics.getInstance().gauge("playback_pcm_cache_bytes", "Decoded PCM held in the cache",
+                    instance::getSizeBytes);
+        }
+        return instance;
+    }
+
+    /*
+     * Stream of the file's cached PCM, or null if it is not cached (or changed since it was)
+     */
+    AudioInputStream open(File file) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(Key.of(file));
+        }
+        if (entry == null) {
+            MISSES.increment();
+            return null;
+        }
+        HITS.increment();
+        return new AudioInputStream(new EntryStream(entry), entry.format, entry.length / entry.format.getFrameSize());
+    }
+
+    /*
+     * Decode the file into the cache in the background, unless it is cached or queued already
+     */
+    void load(File file) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        Key key = Key.of(file);
+        synchronized (this) {
+            if (entries.containsKey(key) || !loading.add(key)) {
+                return;
+            }
+            if (loader == null) {
+                loader = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "AudioPlayer-PcmCache");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+            }
+            loader.execute(() -> {
+                try {
+                    loadNow(file, key);
+                } finally {
+                    synchronized (this) {
+                        loading.remove(key);
+                    }
+                }
+            });
+        }
+    }
+
+    /*
+     * Decode the file into the cache on the calling thread. Returns false if it cannot be
+     * decoded or is too large to cache.
+     */
+    boolean loadNow(File file) {
+        return loadNow(file, Key.of(file));
+    }
+
+    private boolean loadNow(File file, Key key) {
+        long start = System.nanoTime();
+        Entry entry;
+        try (AudioInputStream stream = StreamingPlayback.decodePcmStream(file)) {
+            entry = decode(stream);
+        } catch (UnsupportedAudioFileException | IOException | OutOfMemoryError e) {
+            return false; // unplayable through Java Sound, or no direct memory left
+        }
+        if (entry == null) {
+            return false;
+        }
+        LOAD_TIME.recordSince(start);
+        synchronized (this) {
+            Entry replaced = entries.put(key, entry);
+            totalBytes += entry.length - (replaced != null ? replaced.length : 0);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                if (evicted != entry) {
+                    totalBytes -= evicted.length;
+                    eldest.remove();
+                }
+            }
+        }
+        return true;
+    }
+
+    synchronized boolean contains(File file) {
+        return entries.containsKey(Key.of(file));
+    }
+
+    synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    /*
+     * Read a whole stream into direct buffers, or return null once it exceeds half the limit
+     */
+    private Entry decode(AudioInputStream stream) throws IOException {
+        int frameSize = stream.getFormat().getFrameSize();
+        List<ByteBuffer> chunks = new ArrayList<>();
+        byte[] buffer = new byte[READ_BYTES - READ_BYTES % frameSize];
+        ByteBuffer chunk = null;
+        long length = 0;
+        int n;
+        while ((n = stream.read(buffer, 0, buffer.length)) > 0) {
+            length += n;
+            if (length > maxBytes / 2) {
+                return null;
+            }
+            int off = 0;
+            while (off < n) {
+                if (chunk == null || !chunk.hasRemaining()) {
+                    chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+                    chunks.add(chunk);
+                }
+                int count = Math.min(n - off, chunk.remaining());
+                chunk.put(buffer, off, count);
+                off += count;
+            }
+        }
+        length -= length % frameSize;
+        if (chunk != null && chunk.position() < CHUNK_BYTES / 2) {
+            // Trim the last buffer rather than hold up to a mostly empty megabyte per track
+            ByteBuffer trimmed = ByteBuffer.allocateDirect(chunk.position());
+            chunk.flip();
+            trimmed.put(chunk);
+            chunks.set(chunks.size() - 1, trimmed);
+        }
+        return new Entry(stream.getFormat(), chunks.toArray(new ByteBuffer[0]), length);
+    }
+
+    /**
+     * Identity of a file's content as far as the cache is concerned
+     */
+    private static final class Key {
+
+        private final String path;
+        private final long size;
+        private final long modified;
+
+        private Key(String path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        static Key of(File file) {
+            return new Key(file.getAbsolutePath(), file.length(), file.lastModified());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return size == other.size && modified == other.modified && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modified);
+        }
+    }
+
+    /**
+     * Decoded PCM of one track; the buffers are never written after it is cached
+     */
+    private static final class Entry {
+
+        private final AudioFormat format;
+        private final ByteBuffer[] chunks; // each filled from position 0; all but the last hold CHUNK_BYTES
+        private final long length; // bytes of PCM, a whole number of frames
+
+        Entry(AudioFormat format, ByteBuffer[] chunks, long length) {
+            this.format = format;
+            this.chunks = chunks;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads an entry's PCM; skipping is constant-time. Keeps the entry reachable after eviction.
+     */
+    private static final class EntryStream extends InputStream {
+
+        private final Entry entry;
+        private long position;
+        private ByteBuffer view; // read view of chunk viewIndex
+        private int viewIndex = -1;
+
+        EntryStream(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) > 0 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= entry.length) {
+                return -1;
+            }
+            int total = 0;
+            while (total < len && position < entry.length) {
+                int index = (int) (position / CHUNK_BYTES);
+                if (index != viewIndex) {
+                    view = entry.chunks[index].duplicate();
+                    viewIndex = index;
+                }
+                int at = (int) (position % CHUNK_BYTES);
+                int count = (int) Math.min(Math.min(len - total, view.capacity() - at), entry.length - position);
+                view.clear().position(at);
+                view.get(b, off + total, count);
+                total += count;
+                position += count;
+            }
+            return total;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, entry.length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, entry.length - position);
+        }
+    }
+}
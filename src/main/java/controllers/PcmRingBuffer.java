@@ -0,0 +1,113 @@
+package controllers;
+
+/**
+ * Fixed-size byte ring buffer between a decoder thread and an audio output thread.
+ * The writer blocks while the buffer is full and the reader blocks while it is empty, so
+ * memory use stays constant no matter how long the track is. finish() marks the end of the
+ * stream; close() wakes both sides and makes every further call return -1.
+ */
+class PcmRingBuffer {
+
+    private final byte[] data;
+    private int readPos; // next byte to read
+    private int size; // bytes currently buffered
+    private boolean finished; // writer reached end of stream
+    private boolean closed; // playback was stopped or restarted
+
+    PcmRingBuffer(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    int capacity() {
+        return data.length;
+    }
+
+    /*
+     * Copy all of len bytes into the buffer, waiting for space as needed.
+     * Returns len, or -1 if the buffer was closed first.
+     */
+    synchronized int write(byte[] src, int off, int len) throws InterruptedException {
+        int written = 0;
+        while (written < len) {
+            while (size == data.length && !closed) {
+                wait();
+            }
+            if (closed) {
+                return -1;
+            }
+            int writePos = (readPos + size) % data.length;
+            int chunk = Math.min(len - written, Math.min(data.length - size, data.length - writePos));
+            System.arraycopy(src, off + written, data, writePos, chunk);
+            size += chunk;
+            written += chunk;
+            notifyAll();
+        }
+        return written;
+    }
+
+    /*
+     * Read up to len bytes, waiting until some are available. The count is rounded down to a
+     * multiple of align (a frame size) unless the stream has finished.
+     * Returns -1 once the buffer is closed, or finished and drained.
+     */
+    synchronized int read(byte[] dst, int off, int len, int align) throws InterruptedException {
+        while (!closed && (size == 0 || (size < align && !finished))) {
+            if (size == 0 && finished) {
+                return -1;
+            }
+            wait();
+        }
+        if (closed) {
+            return -1;
+        }
+        int count = Math.min(len, size);
+        if (!finished || count < size) {
+            count -= count % align;
+        }
+        int first = Math.min(count, data.length - readPos);
+        System.arraycopy(data, readPos, dst, off, first);
+        System.arraycopy(data, 0, dst, off + first, count - first);
+        readPos = (readPos + count) % data.length;
+        size -= count;
+        notifyAll();
+        return count;
+    }
+
+    /*
+     * Number of bytes currently buffered
+     */
+    synchronized int available() {
+        return size;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /*
+     * Mark the end of the stream; the reader drains what is left and then gets -1
+     */
+    synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /*
+     * Discard buffered data and wake any waiting threads
+     */
+    synchronized void close() {
+        closed = true;
+        size = 0;
+        notifyAll();
+    }
+
+    /*
+     * Reopen a closed buffer for a new stream, e.g. after a seek
+     */
+    synchronized void reset() {
+        readPos = 0;
+        size = 0;
+        finished = false;
+        closed = false;
+    }
+}
@@ -0,0 +1,412 @@
+package controllers;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import utils.Metrics;
+
+/**
+ * Streams one audio file to a SourceDataLine. A decoder thread reads PCM from the file's
+ * AudioInputStream into a fixed-size PcmRingBuffer and an output thread drains the buffer
+ * into the line, so only a fraction of a second of audio is held in memory and playback
+ * starts as soon as the first chunk is decoded.
+ *
+ * Seeking restarts both threads at the target frame on the same open line. Positions are
+ * derived from the line's frame counter, so they reflect what has actually been played.
+ *
+ * For gapless playback, the following track can be opened and prefetched (its decoder fills
+ * its own ring buffer without a line) and registered with setNext. When this track's last
+ * frame has been written, the output thread hands the still-running line to the next track
+ * and keeps writing its frames, so the two tracks are joined sample-accurately.
+ *
+ * A track whose decoded PCM is in the PcmCache is read from there instead of its file.
+ */
+class StreamingPlayback {
+
+    private static final int BUFFER_MILLIS = 500; // audio held in the ring buffer
+    private static final int CHUNK_BYTES = 16 * 1024; // bytes moved per read/write
+    private static final Metrics.Timer SEEK_TIME = Metrics.getInstance().timer("playback_seek_seconds",
+            "Time from a seek request to the first frame written at the new position");
+    private static final Metrics.Counter UNDERRUNS = Metrics.getInstance().counter("playback_underruns_total",
+            "Times the line ran dry during playback because decoding fell behind");
+
+    /**
+     * Receives end-of-track events; called from the output thread
+     */
+    interface Listener {
+        void onEnded(StreamingPlayback playback);
+        void onHandoff(StreamingPlayback from, StreamingPlayback to, long handoffNanos);
+    }
+
+    private final File file;
+    private final AudioFormat format; // PCM format fed to the line
+    private final long frameLength; // total frames, or AudioSystem.NOT_SPECIFIED
+    private final long fallbackLengthUs; // duration from tags, used when frameLength is unknown
+    private final PcmRingBuffer ring;
+    private final Listener listener;
+
+    private volatile SourceDataLine line; // null until started or handed over
+    private AudioInputStream stream; // decoded stream, positioned for the decoder thread
+    private Thread decoder;
+    private Thread output;
+    private volatile long baseFrame; // file frame the current threads started at
+    private volatile long baseLinePosition; // line frame position at which baseFrame is heard
+    private volatile boolean paused;
+    private final Object nextLock = new Object(); // guards next and handedOff, never held while joining
+    private StreamingPlayback next; // prefetched track to continue into, if any
+    private volatile boolean handedOff; // the line now belongs to the next track
+    private StreamingPlayback previous; // track handed over to us, until our first frame is written
+    private long handoffStartNanos; // when the previous track wrote its last frame
+    private volatile Metrics.Timer firstWriteTimer; // records the delay until the next first frame is written, if set
+    private volatile long firstWriteSince; // System.nanoTime() at which firstWriteTimer's delay started
+
+    private StreamingPlayback(File file, AudioInputStream stream, long fallbackLengthUs, Listener listener) {
+        this.file = file;
+        this.stream = stream;
+        this.format = stream.getFormat();
+        this.frameLength = stream.getFrameLength();
+        this.fallbackLengthUs = fallbackLengthUs;
+        this.listener = listener;
+        int frameSize = format.getFrameSize();
+        int bytes = (int) (format.getFrameRate() * BUFFER_MILLIS / 1000) * frameSize;
+        this.ring = new PcmRingBuffer(Math.max(bytes, CHUNK_BYTES - CHUNK_BYTES % frameSize));
+    }
+
+    /*
+     * Open a file for streaming; nothing is decoded until prefetch() or start() is called
+     */
+    static StreamingPlayback open(File file, long fallbackLengthUs, Listener listener)
+            throws UnsupportedAudioFileException, IOException {
+        return new StreamingPlayback(file, openPcmStream(file), fallbackLengthUs, listener);
+    }
+
+    /*
+     * Open the file as a PCM stream, from the PcmCache if it holds the file's decoded PCM
+     */
+    private static AudioInputStream openPcmStream(File file) throws UnsupportedAudioFileException, IOException {
+        AudioInputStream cached = PcmCache.getInstance().open(file);
+        return cached != null ? cached : decodePcmStream(file);
+    }
+
+    /*
+     * Open the file as a PCM stream, converting compressed encodings through the installed decoders
+     */
+    static AudioInputStream decodePcmStream(File file) throws UnsupportedAudioFileException, IOException {
+        AudioInputStream source = AudioSystem.getAudioInputStream(file);
+        AudioFormat sourceFormat = source.getFormat();
+        AudioFormat.Encoding encoding = sourceFormat.getEncoding();
+        if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) || AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding)) {
+            return source;
+        }
+        int channels = sourceFormat.getChannels();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceFormat.getSampleRate(), 16,
+                channels, channels * 2, sourceFormat.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcm, source);
+    }
+
+    /*
+     * Start decoding the head of the track into the ring buffer without playing it
+     */
+    synchronized void prefetch() {
+        if (decoder == null) {
+            ring.reset();
+            startDecoder();
+        }
+    }
+
+    /*
+     * Open a line and begin playing from the start of the file (or what was prefetched)
+     */
+    synchronized void start() throws LineUnavailableException {
+        if (line == null) {
+            try {
+                SourceDataLine opened = AudioSystem.getSourceDataLine(format);
+                opened.open(format);
+                line = opened;
+            } catch (IllegalArgumentException e) {
+                // No line accepts this PCM format
+                throw new LineUnavailableException(e.getMessage());
+            }
+        }
+        baseFrame = 0;
+        baseLinePosition = line.getLongFramePosition();
+        prefetch();
+        startOutput();
+        line.start();
+    }
+
+    /*
+     * Register the track to continue into gaplessly, or null to end normally.
+     * Returns false if its format differs, in which case it cannot share the line.
+     */
+    boolean setNext(StreamingPlayback playback) {
+        if (playback != null && !format.matches(playback.format)) {
+            return false;
+        }
+        synchronized (nextLock) {
+            next = playback;
+        }
+        return true;
+    }
+
+    void pause() {
+        paused = true;
+        SourceDataLine current = line;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    void resume() {
+        paused = false;
+        SourceDataLine current = line;
+        if (current != null) {
+            current.start();
+        }
+    }
+
+    /*
+     * Jump to the given position, keeping the paused/playing state
+     */
+    synchronized void seek(long positionUs) throws UnsupportedAudioFileException, IOException {
+        if (line == null || handedOff) {
+            return;
+        }
+        long requested = System.nanoTime();
+        long frame = (long) (positionUs / 1_000_000.0 * format.getFrameRate());
+        stopThreads();
+        timeFirstWrite(SEEK_TIME, requested);
+        stream.close();
+        stream = openPcmStream(file);
+        long toSkip = frame * format.getFrameSize();
+        while (toSkip > 0) {
+            long skipped = stream.skip(toSkip);
+            if (skipped <= 0) {
+                break;
+            }
+            toSkip -= skipped;
+        }
+        ring.reset();
+        line.flush();
+        baseFrame = frame;
+        baseLinePosition = line.getLongFramePosition();
+        startDecoder();
+        startOutput();
+        if (!paused) {
+            line.start();
+        }
+    }
+
+    /*
+     * Stop playback and release the file, and the line unless it was handed to the next track
+     */
+    synchronized void close() {
+        stopThreads();
+        if (line != null && !handedOff) {
+            line.close();
+        }
+        try {
+            stream.close();
+        } catch (IOException ignored) {}
+    }
+
+    /*
+     * Position in microseconds of the frame currently being heard
+     */
+    long getPositionUs() {
+        SourceDataLine current = line;
+        long played = current != null ? Math.max(0, current.getLongFramePosition() - baseLinePosition) : 0;
+        return (long) ((baseFrame + played) * 1_000_000.0 / format.getFrameRate());
+    }
+
+    /*
+     * Microseconds until the first frame of this track is heard; 0 once it has started
+     */
+    long getStartDelayUs() {
+        SourceDataLine current = line;
+        if (current == null) {
+            return 0;
+        }
+        long pending = baseLinePosition - current.getLongFramePosition();
+        return pending > 0 ? (long) (pending * 1_000_000.0 / format.getFrameRate()) : 0;
+    }
+
+    /*
+     * Track length in microseconds, or 0 if unknown
+     */
+    long getLengthUs() {
+        if (frameLength != AudioSystem.NOT_SPECIFIED && frameLength > 0) {
+            return (long) (frameLength * 1_000_000.0 / format.getFrameRate());
+        }
+        return fallbackLengthUs;
+    }
+
+    /*
+     * Apply a 0.0-1.0 volume through the line's gain control.
+     * Returns false if the line has no gain control.
+     */
+    boolean setVolume(float volume) {
+        SourceDataLine current = line;
+        if (current == null || !current.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+            return false;
+        }
+        FloatControl volumeControl = (FloatControl) current.getControl(FloatControl.Type.MASTER_GAIN);
+        // Convert 0.0-1.0 to decibel range
+        float min = volumeControl.getMinimum();
+        float max = volumeControl.getMaximum();
+        volumeControl.setValue(min + (max - min) * volume);
+        return true;
+    }
+
+    /*
+     * Record on timer the time from sinceNanos until the output thread writes its first frame.
+     * Must be called before the output thread is started.
+     */
+    void timeFirstWrite(Metrics.Timer timer, long sinceNanos) {
+        firstWriteSince = sinceNanos;
+        firstWriteTimer = timer;
+    }
+
+    /*
+     * Take over the previous track's line; our first frame follows its last written frame
+     */
+    private synchronized boolean adopt(StreamingPlayback from, SourceDataLine sharedLine, long linePosition,
+            boolean sharedPaused, long lastWriteNanos) {
+        if (ring.isClosed()) {
+            return false; // closed while waiting to be played
+        }
+        previous = from;
+        handoffStartNanos = lastWriteNanos;
+        line = sharedLine;
+        paused = sharedPaused;
+        baseFrame = 0;
+        baseLinePosition = linePosition;
+        output = Thread.currentThread();
+        prefetch();
+        return true;
+    }
+
+    private void startDecoder() {
+        AudioInputStream source = stream;
+        decoder = new Thread(() -> decode(source), "AudioPlayer-Decoder");
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    private void startOutput() {
+        output = new Thread(this::play, "AudioPlayer-Output");
+        output.setDaemon(true);
+        output.start();
+    }
+
+    private void stopThreads() {
+        ring.close();
+        if (line != null && !handedOff) {
+            line.stop();
+        }
+        join(decoder);
+        if (!handedOff) {
+            join(output);
+        }
+    }
+
+    private void join(Thread thread) {
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            while (thread.isAlive()) {
+                // Flushing releases an output thread blocked in line.write or line.drain
+                if (line != null) {
+                    line.flush();
+                }
+                thread.join(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Decoder thread: fill the ring buffer until end of stream
+     */
+    private void decode(AudioInputStream source) {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        try {
+            int n;
+            while ((n = source.read(chunk, 0, chunk.length - chunk.length % format.getFrameSize())) > 0) {
+                if (ring.write(chunk, 0, n) < 0) {
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Treat a read error like the end of the file: play what was decoded
+        }
+        ring.finish();
+    }
+
+    /*
+     * Output thread: drain the ring buffer into the line, then continue into the next track
+     * or report the end of playback
+     */
+    private void play() {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        int frameSize = format.getFrameSize();
+        long framesWritten = 0;
+        try {
+            int n;
+            while ((n = ring.read(chunk, 0, chunk.length, frameSize)) >= 0) {
+                if (framesWritten > 0 && !paused && line.available() >= line.getBufferSize()) {
+                    UNDERRUNS.increment(); // everything written so far was played before more was decoded
+                }
+                framesWritten += line.write(chunk, 0, n) / frameSize;
+                Metrics.Timer timer = firstWriteTimer;
+                if (timer != null) {
+                    firstWriteTimer = null;
+                    timer.recordSince(firstWriteSince);
+                }
+                if (previous != null) {
+                    // First frames of a gapless continuation are queued right behind the previous track
+                    listener.onHandoff(previous, this, System.nanoTime() - handoffStartNanos);
+                    previous = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+        // A closed ring means playback was stopped or restarted, not finished
+        if (ring.isClosed()) {
+            return;
+        }
+
+        long lastWrite = System.nanoTime();
+        StreamingPlayback following;
+        synchronized (nextLock) {
+            following = next;
+            next = null;
+            if (following != null && !ring.isClosed()
+                    && following.adopt(this, line, baseLinePosition + framesWritten, paused, lastWrite)) {
+                handedOff = true;
+            } else {
+                following = null;
+            }
+        }
+        if (following != null) {
+            following.play();
+            return;
+        }
+
+        line.drain();
+        if (!ring.isClosed()) {
+            listener.onEnded(this);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package models;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -14,6 +15,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @JsonIgnoreProperties(ignoreUnknown = true) // Ignore unknown properties during JSON deserialization
 public class Album {
 
+    private int id; // Stable id assigned by MusicLibrary, 0 until then
     private String title; // Album title
     private Artist artist; // Album artist
     private LocalDate releaseDate; // Release date
@@ -60,6 +62,14 @@ public class Album {
     /*
      * Getters and setters
      */
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -92,9 +102,19 @@ public class Album {
         this.genre = genre;
     }
 
+    /*
+     * Read-only view of the album's songs; it follows later changes
+     */
     @JsonIgnore
     public List<Song> getSongs() {
-        return new ArrayList<>(songs);
+        return Collections.unmodifiableList(songs);
+    }
+
+    /*
+     * Song at the given position in the album
+     */
+    public Song getSong(int index) {
+        return songs.get(index);
     }
 
     public void addSong(Song song) {
@@ -1,6 +1,7 @@
 package models;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -13,6 +14,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @JsonIgnoreProperties(ignoreUnknown = true) // Ignore unknown properties during JSON deserialization
 public class Artist {
 
+    private int id; // Stable id assigned by MusicLibrary, 0 until then
     private String name; // Artist name
     private String biography; // Artist biography
     private List<Album> albums; // Albums by the artist
@@ -51,6 +53,14 @@ public class Artist {
     /*
      * Getters and setters
      */
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
@@ -67,9 +77,19 @@ public class Artist {
         this.biography = biography;
     }
 
+    /*
+     * Read-only view of the artist's albums; it follows later changes
+     */
     @JsonIgnore
     public List<Album> getAlbums() {
-        return new ArrayList<>(albums);
+        return Collections.unmodifiableList(albums);
+    }
+
+    /*
+     * Album at the given position in the artist's album list
+     */
+    public Album getAlbum(int index) {
+        return albums.get(index);
     }
 
     public void addAlbum(Album album) {
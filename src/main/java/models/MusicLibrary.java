@@ -1,28 +1,96 @@
 package models;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import utils.Metrics;
 
 /**
- * Central management class for the music library
+ * Central management class for the music library.
+ *
+ * The library is safe to use from several threads: every public method runs under a
+ * read/write lock, so any number of readers (the UI, searches, persistence) proceed in
+ * parallel while writers (imports, edits, loads) are applied one at a time. Readers always
+ * get copies, never live views of the internal collections. Use read() and update() when
+ * several calls must see or produce one consistent state.
+ *
+ * getAllSongs() and getAllPlaylists() answer from published copies without taking the lock as
+ * long as the songs or playlists have not changed since the copy was made, so they do not wait
+ * for writers that leave them alone. Once stale, the copy is rebuilt under the read lock.
+ *
+ * Songs, artists and albums get a small numeric id when they join the library. An entity that
+ * already has one (e.g. read back from a snapshot) keeps it unless another entity holds it, so
+ * ids stay the same from one session to the next and can be stored in place of the object.
  */
 public class MusicLibrary {
 
-    private List<Song> songs; // All songs in the library
-    private List<Artist> artists; // All artists in the library
-    private List<Album> albums; // All albums in the library
+    private Map<SongRef, SongEntry> songs; // All songs in the library, in insertion order
+    private Map<String, Song> songsByPath; // Index of songs by file path
+    private Map<SongKey, Song> songsByKey; // Index of songs by title/artist/album (Song.equals)
+    private Map<String, Artist> artists; // All artists in the library, keyed by name
+    private Map<AlbumKey, Album> albums; // All albums in the library, keyed by title and artist name
+    private final IdIndex<Song> songIds = new IdIndex<>(Song::getId, Song::setId); // Songs by id
+    private final IdIndex<Artist> artistIds = new IdIndex<>(Artist::getId, Artist::setId); // Artists by id
+    private final IdIndex<Album> albumIds = new IdIndex<>(Album::getId, Album::setId); // Albums by id
+    private Map<String, Set<SongEntry>> songsByArtist; // Browse index: artist name -> songs
+    private Map<AlbumKey, Set<SongEntry>> songsByAlbum; // Browse index: album -> songs
+    private Map<String, Set<SongEntry>> songsByGenre; // Browse index: case-folded genre -> songs
+    private Map<String, Integer> genreCounts; // Distinct genres in sorted order -> number of songs
+    private Map<String, Map<AlbumKey, Album>> albumsByArtist; // Browse index: artist name -> albums
+    private long nextSeq = 0; // Insertion counter, used to return browse results in library order
+    private SongSearchIndex searchIndex; // Inverted index backing searchSongs
     private List<Playlist> playlists; // All playlists in the library
+    private volatile List<Song> songsSnapshot = Collections.emptyList(); // Read-only copy of the songs returned by getAllSongs
+    private volatile boolean songsStale; // songsSnapshot no longer matches the songs
+    private volatile List<Playlist> playlistsSnapshot = Collections.emptyList(); // Read-only copy of the playlists
+    private volatile boolean playlistsStale; // playlistsSnapshot no longer matches the playlists
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(); // Guards all of the above
     private static MusicLibrary instance; // Singleton instance
 
+    private static final Metrics.Timer SEARCH_TIME = Metrics.getInstance().timer("library_search_seconds",
+            "Time to answer a song search, including waiting for the read lock");
+    private static final Metrics.Counter SONGS_ADDED = Metrics.getInstance().counter("library_songs_added_total",
+            "Songs added to the library");
+    private static final Metrics.Counter SONGS_REMOVED = Metrics.getInstance().counter("library_songs_removed_total",
+            "Songs removed from the library");
+    private static final Metrics.Counter SONGS_REINDEXED = Metrics.getInstance().counter("library_songs_reindexed_total",
+            "Songs re-indexed after their metadata was edited");
+
     /*
      * Private constructor for singleton pattern, restricts the class to a single instance
      */
     private MusicLibrary() {
-        this.songs = new ArrayList<>();
-        this.artists = new ArrayList<>();
-        this.albums = new ArrayList<>();
+        this.songs = new LinkedHashMap<>();
+        this.songsByPath = new HashMap<>();
+        this.songsByKey = new HashMap<>();
+        this.artists = new LinkedHashMap<>();
+        this.albums = new LinkedHashMap<>();
+        this.songsByArtist = new HashMap<>();
+        this.songsByAlbum = new HashMap<>();
+        this.songsByGenre = new HashMap<>();
+        this.genreCounts = new TreeMap<>();
+        this.albumsByArtist = new HashMap<>();
+        this.searchIndex = new SongSearchIndex();
         this.playlists = new ArrayList<>();
+        Metrics.getInstance().gauge("library_songs", "Songs currently in the library", this::getTotalSongCount);
     }
 
     /*
@@ -36,44 +104,98 @@ public class MusicLibrary {
     }
 
     /*
-     * Add a song to the library, ensuring no duplicates by file path
-     * Also adds associated artist and album if they do not already exist
+     * Run several reads against one consistent state of the library.
+     * Other readers may run at the same time; writers wait until the action returns.
      */
-    public void addSong(Song song) {
-        if (song == null) {
-            return;
+    public <T> T read(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        // If a song with the same file path already exists, treat as duplicate
-        String path = song.getFilePath();
-        if (path != null && !path.isEmpty()) {
-            for (Song s : songs) {
-                if (path.equals(s.getFilePath())) {
-                    return;
-                }
-            }
+    /*
+     * Apply several changes as one atomic write, e.g. replacing the content with a loaded snapshot.
+     * Readers see the library either before or after all of the changes.
+     */
+    public void update(Runnable changes) {
+        lock.writeLock().lock();
+        try {
+            changes.run();
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        // Avoid adding exact duplicate song objects
-        if (songs.contains(song)) {
-            return;
-        }
+    /*
+     * Add a song to the library, ensuring no duplicates by file path
+     * Also adds associated artist and album if they do not already exist.
+     * Returns false if the song was rejected as a duplicate (or is null).
+     */
+    public boolean addSong(Song song) {
+        lock.writeLock().lock();
+        try {
+            if (song == null) {
+                return false;
+            }
+
+            // If a song with the same file path already exists, treat as duplicate
+            String path = song.getFilePath();
+            if (path != null && !path.isEmpty() && songsByPath.containsKey(path)) {
+                return false;
+            }
 
-        songs.add(song);
+            // Avoid adding exact duplicate song objects
+            SongKey key = SongKey.of(song);
+            if (songsByKey.containsKey(key)) {
+                return false;
+            }
 
-        // Add artist if not exists
-        Artist artist = song.getArtist();
-        if (artist != null && !artists.contains(artist)) {
-            artists.add(artist);
+            SongRef ref = new SongRef(song);
+            if (songs.containsKey(ref)) {
+                return false;
+            }
+            SongEntry entry = new SongEntry(song, nextSeq++, path, key, song.getGenre());
+            songs.put(ref, entry);
+            songIds.add(song);
+            songsStale = true;
+            indexSong(entry);
+            searchIndex.add(song);
+            SONGS_ADDED.increment();
+
+            // Add artist if not exists
+            Artist artist = song.getArtist();
+            if (artist != null && !artists.containsKey(artist.getName())) {
+                putArtist(artist);
+            }
+
+            // Add album if not exists
+            Album album = song.getAlbum();
+            if (album != null && !albums.containsKey(AlbumKey.of(album))) {
+                putAlbum(album);
+                if (artist != null) {
+                    artist.addAlbum(album);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        // Add album if not exists
-        Album album = song.getAlbum();
-        if (album != null && !albums.contains(album)) {
-            albums.add(album);
-            if (artist != null) {
-                artist.addAlbum(album);
+    /*
+     * Add several songs at once, e.g. a batch committed by an import
+     */
+    public void addSongs(Collection<Song> batch) {
+        lock.writeLock().lock();
+        try {
+            for (Song song : batch) {
+                addSong(song);
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -82,45 +204,374 @@ public class MusicLibrary {
      * and cleaning up empty albums or artists if necessary
      */
     public void removeSong(Song song) {
-        songs.remove(song);
+        lock.writeLock().lock();
+        try {
+            SongEntry entry = songs.remove(new SongRef(song));
+            if (entry == null) {
+                // Fall back to an equal song, matching List.remove(Object) semantics
+                Song equal = songsByKey.get(SongKey.of(song));
+                entry = equal != null ? songs.remove(new SongRef(equal)) : null;
+            }
+            if (entry != null) {
+                songsStale = true;
+                songIds.remove(entry.song);
+                unindexSong(entry);
+                searchIndex.remove(entry.song);
+                SONGS_REMOVED.increment();
+            }
 
-        // Remove from all playlists
-        for (Playlist playlist : playlists) {
-            playlist.removeSong(song);
+            // Clean up after the library's own instance, which may be an equal copy of the argument
+            Song target = entry != null ? entry.song : song;
+
+            // Remove from all playlists
+            for (Playlist playlist : playlists) {
+                playlist.removeSong(target);
+            }
+
+            // Remove album if it becomes empty
+            Album album = target.getAlbum();
+            if (album != null) {
+                album.removeSong(target);
+                if (album.getSongCount() == 0) {
+                    removeAlbum(album);
+                    if (target.getArtist() != null) {
+                        target.getArtist().removeAlbum(album);
+                    }
+                }
+            }
+
+            // Remove artist if they have no more songs
+            Artist artist = target.getArtist();
+            if (artist != null && !songsByArtist.containsKey(artist.getName())) {
+                artistIds.remove(artists.remove(artist.getName()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Re-index a song after its title, artist, album, genre or file path was edited in place,
+     * so lookups, duplicate detection and search see the new values
+     */
+    public void reindexSong(Song song) {
+        lock.writeLock().lock();
+        try {
+            SongEntry entry = song != null ? songs.get(new SongRef(song)) : null;
+            if (entry == null) {
+                return;
+            }
+            unindexSong(entry);
+            entry.path = song.getFilePath();
+            entry.key = SongKey.of(song);
+            entry.genre = song.getGenre();
+            indexSong(entry);
+            searchIndex.update(song);
+            SONGS_REINDEXED.increment();
+
+            Artist artist = song.getArtist();
+            if (artist != null && !artists.containsKey(artist.getName())) {
+                putArtist(artist);
+            }
+            Album album = song.getAlbum();
+            if (album != null && !albums.containsKey(AlbumKey.of(album))) {
+                putAlbum(album);
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
+
+    /*
+     * Edit a song's metadata in place; null or empty values leave a field unchanged.
+     * The named artist and album are looked up or created, and the song is re-indexed.
+     */
+    public void editSong(Song song, String title, String artistName, String albumTitle, String genre,
+            Integer trackNumber, String filePath) {
+        lock.writeLock().lock();
+        try {
+            if (song == null) {
+                return;
+            }
+            if (title != null && !title.isEmpty()) {
+                song.setTitle(title);
+            }
+
+            // Artist: find or create
+            Artist artistObj = song.getArtist();
+            if (artistName != null && !artistName.isEmpty()) {
+                Artist found = findArtist(artistName);
+                if (found == null) {
+                    found = new Artist(artistName);
+                    addArtist(found);
+                }
+                artistObj = found;
+                song.setArtist(found);
+            }
 
-        // Remove album if it becomes empty
-        Album album = song.getAlbum();
-        if (album != null) {
-            album.removeSong(song);
-            if (album.getSongCount() == 0) {
-                albums.remove(album);
-                if (song.getArtist() != null) {
-                    song.getArtist().removeAlbum(album);
+            // Album: find or create and associate with artist
+            if (albumTitle != null && !albumTitle.isEmpty()) {
+                Album found = findAlbum(albumTitle, artistObj);
+                if (found == null) {
+                    found = new Album(albumTitle, artistObj);
+                    addAlbum(found);
+                    if (artistObj != null) {
+                        artistObj.addAlbum(found);
+                    }
                 }
+                song.setAlbum(found);
+                found.addSong(song);
+            }
+
+            if (genre != null && !genre.isEmpty()) {
+                song.setGenre(genre);
+            }
+            if (trackNumber != null) {
+                song.setTrackNumber(trackNumber);
             }
+            if (filePath != null && !filePath.isEmpty()) {
+                song.setFilePath(filePath);
+            }
+            reindexSong(song);
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        // Remove artist if they have no more songs
-        Artist artist = song.getArtist();
-        if (artist != null && getSongsByArtist(artist).isEmpty()) {
-            artists.remove(artist);
+    /*
+     * Add a song's indexed state to the lookup and browse indexes
+     */
+    private void indexSong(SongEntry entry) {
+        if (entry.path != null && !entry.path.isEmpty()) {
+            songsByPath.putIfAbsent(entry.path, entry.song);
+        }
+        songsByKey.putIfAbsent(entry.key, entry.song);
+        songsByArtist.computeIfAbsent(entry.key.artistName, k -> new LinkedHashSet<>()).add(entry);
+        if (entry.key.album != null) {
+            songsByAlbum.computeIfAbsent(entry.key.album, k -> new LinkedHashSet<>()).add(entry);
+        }
+        if (entry.genre != null) {
+            songsByGenre.computeIfAbsent(foldGenre(entry.genre), k -> new LinkedHashSet<>()).add(entry);
+            if (!entry.genre.isEmpty()) {
+                genreCounts.merge(entry.genre, 1, Integer::sum);
+            }
         }
     }
 
     /*
-     * Get a list of all songs in the library
+     * Remove a song's previously indexed state from the lookup and browse indexes
+     */
+    private void unindexSong(SongEntry entry) {
+        if (entry.path != null && !entry.path.isEmpty()) {
+            songsByPath.remove(entry.path, entry.song);
+        }
+        songsByKey.remove(entry.key, entry.song);
+        removeFromIndex(songsByArtist, entry.key.artistName, entry);
+        if (entry.key.album != null) {
+            removeFromIndex(songsByAlbum, entry.key.album, entry);
+        }
+        if (entry.genre != null) {
+            removeFromIndex(songsByGenre, foldGenre(entry.genre), entry);
+            if (!entry.genre.isEmpty()) {
+                genreCounts.computeIfPresent(entry.genre, (genre, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    private static <K> void removeFromIndex(Map<K, Set<SongEntry>> index, K key, SongEntry entry) {
+        Set<SongEntry> entries = index.get(key);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static String foldGenre(String genre) {
+        return genre.toLowerCase(Locale.ROOT);
+    }
+
+    /*
+     * Songs of a browse index entry, in the order they were added to the library
+     */
+    private static List<Song> songsOf(Set<SongEntry> entries) {
+        List<Song> result = new ArrayList<>(entries != null ? entries.size() : 0);
+        if (entries == null) {
+            return result;
+        }
+        // Edited songs are re-appended to their new entries; restore library order
+        List<SongEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(entry -> entry.seq));
+        for (SongEntry entry : sorted) {
+            result.add(entry.song);
+        }
+        return result;
+    }
+
+    /*
+     * Add an album to the album map and the artist -> albums index
+     */
+    private void putAlbum(Album album) {
+        AlbumKey key = AlbumKey.of(album);
+        albums.put(key, album);
+        albumIds.add(album);
+        albumsByArtist.computeIfAbsent(key.artistName, k -> new LinkedHashMap<>()).put(key, album);
+    }
+
+    /*
+     * Add an artist to the artist map
+     */
+    private void putArtist(Artist artist) {
+        artists.put(artist.getName(), artist);
+        artistIds.add(artist);
+    }
+
+    /*
+     * Remove an album from the album map and the artist -> albums index
+     */
+    private void removeAlbum(Album album) {
+        AlbumKey key = AlbumKey.of(album);
+        albumIds.remove(albums.remove(key));
+        Map<AlbumKey, Album> byArtist = albumsByArtist.get(key.artistName);
+        if (byArtist != null) {
+            byArtist.remove(key);
+            if (byArtist.isEmpty()) {
+                albumsByArtist.remove(key.artistName);
+            }
+        }
+    }
+
+    /*
+     * Get all songs in the library, in the order they were added.
+     * The list is a read-only snapshot shared by all callers until the songs change, so
+     * repeated calls between changes do not copy the library.
      */
     public List<Song> getAllSongs() {
-        return new ArrayList<>(songs);
+        List<Song> snapshot = songsSnapshot;
+        if (!songsStale) {
+            return snapshot; // a write in progress has not changed the songs (yet)
+        }
+        lock.readLock().lock();
+        try {
+            if (songsStale) {
+                songsStale = false;
+                List<Song> copy = new ArrayList<>(songs.size());
+                for (SongEntry entry : songs.values()) {
+                    copy.add(entry.song);
+                }
+                // Concurrent readers may both rebuild it; they produce equal lists
+                songsSnapshot = Collections.unmodifiableList(copy);
+            }
+            return songsSnapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Song at the given position in library order
+     */
+    public Song getSong(int index) {
+        return getAllSongs().get(index);
+    }
+
+    /*
+     * Position of the given song object in library order, or -1 if it is not in the library
+     */
+    public int indexOfSong(Song song) {
+        List<Song> all = getAllSongs();
+        for (int i = 0; i < all.size(); i++) {
+            if (all.get(i) == song) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Check whether the given song object is in the library
+     */
+    public boolean containsSong(Song song) {
+        lock.readLock().lock();
+        try {
+            return song != null && songs.containsKey(new SongRef(song));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Find a song by its file path, or null if none
+     */
+    public Song findSongByPath(String path) {
+        lock.readLock().lock();
+        try {
+            return path != null ? songsByPath.get(path) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Find a song in the library by its id, or null if none
+     */
+    public Song findSongById(int id) {
+        lock.readLock().lock();
+        try {
+            return songIds.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Find an artist in the library by its id, or null if none
+     */
+    public Artist findArtistById(int id) {
+        lock.readLock().lock();
+        try {
+            return artistIds.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Find an album in the library by its id, or null if none
+     */
+    public Album findAlbumById(int id) {
+        lock.readLock().lock();
+        try {
+            return albumIds.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /*
      * Add an artist to the library if not already present
      */
     public void addArtist(Artist artist) {
-        if (artist != null && !artists.contains(artist)) {
-            artists.add(artist);
+        lock.writeLock().lock();
+        try {
+            if (artist != null && !artists.containsKey(artist.getName())) {
+                putArtist(artist);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Find an artist by exact name, or null if none
+     */
+    public Artist findArtist(String name) {
+        lock.readLock().lock();
+        try {
+            return artists.get(name);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
@@ -128,7 +579,12 @@ public class MusicLibrary {
      * Get a list of all artists in the library
      */
     public List<Artist> getAllArtists() {
-        return new ArrayList<>(artists);
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(artists.values());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /*
@@ -136,14 +592,31 @@ public class MusicLibrary {
      * Also adds the associated artist if not already present
      */
     public void addAlbum(Album album) {
-        if (album != null && !albums.contains(album)) {
-            albums.add(album);
+        lock.writeLock().lock();
+        try {
+            if (album != null && !albums.containsKey(AlbumKey.of(album))) {
+                putAlbum(album);
 
-            // Add artist if not exists
-            Artist artist = album.getArtist();
-            if (artist != null && !artists.contains(artist)) {
-                artists.add(artist);
+                // Add artist if not exists
+                Artist artist = album.getArtist();
+                if (artist != null && !artists.containsKey(artist.getName())) {
+                    putArtist(artist);
+                }
             }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Find an album by exact title and artist, or null if none
+     */
+    public Album findAlbum(String title, Artist artist) {
+        lock.readLock().lock();
+        try {
+            return albums.get(new AlbumKey(title, artist != null ? artist.getName() : null));
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
@@ -151,15 +624,26 @@ public class MusicLibrary {
      * Get a list of all albums in the library
      */
     public List<Album> getAllAlbums() {
-        return new ArrayList<>(albums);
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(albums.values());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /*
      * Add a playlist to the library if not already present
      */
     public void addPlaylist(Playlist playlist) {
-        if (playlist != null && !playlists.contains(playlist)) {
-            playlists.add(playlist);
+        lock.writeLock().lock();
+        try {
+            if (playlist != null && !playlists.contains(playlist)) {
+                playlists.add(playlist);
+                playlistsStale = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -167,123 +651,422 @@ public class MusicLibrary {
      * Remove a playlist from the library
      */
     public void removePlaylist(Playlist playlist) {
-        playlists.remove(playlist);
+        lock.writeLock().lock();
+        try {
+            if (playlists.remove(playlist)) {
+                playlistsStale = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Find a playlist by name, or null if none
+     */
+    public Playlist findPlaylist(String name) {
+        for (Playlist playlist : playlistsView()) {
+            if (playlist.getName().equals(name)) {
+                return playlist;
+            }
+        }
+        return null;
     }
 
     /*
      * Get a list of all playlists in the library
      */
     public List<Playlist> getAllPlaylists() {
-        return new ArrayList<>(playlists);
+        return new ArrayList<>(playlistsView());
+    }
+
+    /*
+     * Read-only copy of the playlists, published like the one getAllSongs returns
+     */
+    private List<Playlist> playlistsView() {
+        List<Playlist> snapshot = playlistsSnapshot;
+        if (!playlistsStale) {
+            return snapshot;
+        }
+        lock.readLock().lock();
+        try {
+            if (playlistsStale) {
+                playlistsStale = false;
+                playlistsSnapshot = Collections.unmodifiableList(new ArrayList<>(playlists));
+            }
+            return playlistsSnapshot;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /*
      * Search functions for songs, artists, albums, and playlists by name or relevant fields
      */
     public List<Song> searchSongs(String query) {
-        String lowerQuery = query.toLowerCase();
-        return songs.stream()
-                .filter(song -> song.getTitle().toLowerCase().contains(lowerQuery)
-                || song.getArtist().getName().toLowerCase().contains(lowerQuery)
-                || (song.getAlbum() != null
-                && song.getAlbum().getTitle().toLowerCase().contains(lowerQuery)))
-                .collect(Collectors.toList());
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            return searchIndex.search(query);
+        } finally {
+            lock.readLock().unlock();
+            SEARCH_TIME.recordSince(start);
+        }
+    }
+
+    /*
+     * Search songs, returning at most limit results (the earliest matches in library order).
+     * An interrupted caller gets an empty list back early.
+     */
+    public List<Song> searchSongs(String query, int limit) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            return searchIndex.search(query, limit);
+        } finally {
+            lock.readLock().unlock();
+            SEARCH_TIME.recordSince(start);
+        }
     }
 
     public List<Artist> searchArtists(String query) {
-        String lowerQuery = query.toLowerCase();
-        return artists.stream()
-                .filter(artist -> artist.getName().toLowerCase().contains(lowerQuery))
-                .collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            String lowerQuery = query.toLowerCase();
+            return artists.values().stream()
+                    .filter(artist -> artist.getName().toLowerCase().contains(lowerQuery))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public List<Album> searchAlbums(String query) {
-        String lowerQuery = query.toLowerCase();
-        return albums.stream()
-                .filter(album -> album.getTitle().toLowerCase().contains(lowerQuery)
-                || album.getArtist().getName().toLowerCase().contains(lowerQuery))
-                .collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            String lowerQuery = query.toLowerCase();
+            return albums.values().stream()
+                    .filter(album -> album.getTitle().toLowerCase().contains(lowerQuery)
+                    || album.getArtist().getName().toLowerCase().contains(lowerQuery))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public List<Playlist> searchPlaylists(String query) {
-        String lowerQuery = query.toLowerCase();
-        return playlists.stream()
-                .filter(playlist -> playlist.getName().toLowerCase().contains(lowerQuery)
-                || playlist.getDescription().toLowerCase().contains(lowerQuery))
-                .collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            String lowerQuery = query.toLowerCase();
+            return playlists.stream()
+                    .filter(playlist -> playlist.getName().toLowerCase().contains(lowerQuery)
+                    || playlist.getDescription().toLowerCase().contains(lowerQuery))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /*
      * Get songs by specific artist, album, or genre
      */
     public List<Song> getSongsByArtist(Artist artist) {
-        return songs.stream()
-                .filter(song -> song.getArtist().equals(artist))
-                .collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            return songsOf(songsByArtist.get(artist != null ? artist.getName() : null));
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public List<Song> getSongsByAlbum(Album album) {
-        return songs.stream()
-                .filter(song -> album.equals(song.getAlbum()))
-                .collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            return album != null ? songsOf(songsByAlbum.get(AlbumKey.of(album))) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public List<Song> getSongsByGenre(String genre) {
-        return songs.stream()
-                .filter(song -> genre.equalsIgnoreCase(song.getGenre()))
-                .collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            return genre != null ? songsOf(songsByGenre.get(foldGenre(genre))) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public List<Album> getAlbumsByArtist(Artist artist) {
-        return albums.stream()
-                .filter(album -> album.getArtist().equals(artist))
-                .collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            Map<AlbumKey, Album> byArtist = albumsByArtist.get(artist != null ? artist.getName() : null);
+            return byArtist != null ? new ArrayList<>(byArtist.values()) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /*
      * Get aggregate statistics about the library (total songs, artists, albums, playlists, total duration)
      */
     public int getTotalSongCount() {
-        return songs.size();
+        lock.readLock().lock();
+        try {
+            return songs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public int getTotalArtistCount() {
-        return artists.size();
+        lock.readLock().lock();
+        try {
+            return artists.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public int getTotalAlbumCount() {
-        return albums.size();
+        lock.readLock().lock();
+        try {
+            return albums.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public int getTotalPlaylistCount() {
-        return playlists.size();
+        lock.readLock().lock();
+        try {
+            return playlists.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     public int getTotalDurationSeconds() {
-        return songs.stream()
-                .mapToInt(Song::getDurationSeconds)
-                .sum();
+        lock.readLock().lock();
+        try {
+            return songStream()
+                    .mapToInt(Song::getDurationSeconds)
+                    .sum();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /*
      * Clear the entire library
      */
     public void clearLibrary() {
-        songs.clear();
-        artists.clear();
-        albums.clear();
-        playlists.clear();
+        lock.writeLock().lock();
+        try {
+            songs.clear();
+            songsStale = true;
+            songsByPath.clear();
+            songsByKey.clear();
+            searchIndex.clear();
+            artists.clear();
+            albums.clear();
+            songIds.clear();
+            artistIds.clear();
+            albumIds.clear();
+            songsByArtist.clear();
+            songsByAlbum.clear();
+            songsByGenre.clear();
+            genreCounts.clear();
+            albumsByArtist.clear();
+            playlists.clear();
+            playlistsStale = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /*
      * Get a list of all unique genres in the library
      */
     public List<String> getAllGenres() {
-        return songs.stream()
-                .map(Song::getGenre)
-                .filter(genre -> !genre.isEmpty())
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
-    }
-}
\ No newline at end of file
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(genreCounts.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Stream over all songs in insertion order without copying
+     */
+    private Stream<Song> songStream() {
+        return songs.values().stream().map(entry -> entry.song);
+    }
+
+    /*
+     * Identity wrapper so songs can be indexed by reference, since Song.equals and
+     * hashCode depend on metadata that can be edited in place
+     */
+    private static final class SongRef {
+
+        private final Song song;
+
+        SongRef(Song song) {
+            this.song = song;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof SongRef && ((SongRef) obj).song == song;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(song);
+        }
+    }
+
+    /*
+     * Indexed state of a song, remembered so it can be unindexed after an in-place edit
+     */
+    private static final class SongEntry {
+
+        private final Song song;
+        private final long seq; // position in insertion order
+        private String path; // file path at the time of indexing
+        private SongKey key; // equality key (and artist/album) at the time of indexing
+        private String genre; // genre at the time of indexing
+
+        SongEntry(Song song, long seq, String path, SongKey key, String genre) {
+            this.song = song;
+            this.seq = seq;
+            this.path = path;
+            this.key = key;
+            this.genre = genre;
+        }
+    }
+
+    /*
+     * Hash key mirroring Song.equals (title, artist name, album title and artist)
+     */
+    private static final class SongKey {
+
+        private final String title;
+        private final String artistName;
+        private final AlbumKey album;
+
+        private SongKey(String title, String artistName, AlbumKey album) {
+            this.title = title;
+            this.artistName = artistName;
+            this.album = album;
+        }
+
+        static SongKey of(Song song) {
+            return new SongKey(song.getTitle(),
+                    song.getArtist() != null ? song.getArtist().getName() : null,
+                    song.getAlbum() != null ? AlbumKey.of(song.getAlbum()) : null);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SongKey)) {
+                return false;
+            }
+            SongKey other = (SongKey) obj;
+            return Objects.equals(title, other.title)
+                    && Objects.equals(artistName, other.artistName)
+                    && Objects.equals(album, other.album);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(title, artistName, album);
+        }
+    }
+
+    /*
+     * Hash key mirroring Album.equals (title and artist name)
+     */
+    private static final class AlbumKey {
+
+        private final String title;
+        private final String artistName;
+
+        AlbumKey(String title, String artistName) {
+            this.title = title;
+            this.artistName = artistName;
+        }
+
+        static AlbumKey of(Album album) {
+            return new AlbumKey(album.getTitle(), album.getArtist() != null ? album.getArtist().getName() : null);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof AlbumKey)) {
+                return false;
+            }
+            AlbumKey other = (AlbumKey) obj;
+            return Objects.equals(title, other.title)
+                    && Objects.equals(artistName, other.artistName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(title, artistName);
+        }
+    }
+
+    /**
+     * Ids of one kind of entity. An entity keeps the id it comes with if it is free; otherwise
+     * (or if it has none) it gets the next id above every id in use.
+     */
+    private static final class IdIndex<T> {
+
+        private final Map<Integer, T> byId = new HashMap<>();
+        private final ToIntFunction<T> getId;
+        private final ObjIntConsumer<T> setId;
+        private int nextId = 1;
+
+        IdIndex(ToIntFunction<T> getId, ObjIntConsumer<T> setId) {
+            this.getId = getId;
+            this.setId = setId;
+        }
+
+        void add(T entity) {
+            int id = getId.applyAsInt(entity);
+            T holder = id > 0 ? byId.get(id) : null;
+            if (holder == entity) {
+                return;
+            }
+            if (id <= 0 || holder != null) {
+                id = nextId;
+                setId.accept(entity, id);
+            }
+            byId.put(id, entity);
+            nextId = Math.max(nextId, id + 1);
+        }
+
+        void remove(T entity) {
+            if (entity != null) {
+                byId.remove(getId.applyAsInt(entity), entity);
+            }
+        }
+
+        T get(int id) {
+            return byId.get(id);
+        }
+
+        void clear() {
+            byId.clear();
+            nextId = 1;
+        }
+    }
+}
@@ -2,14 +2,23 @@ package models;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
- * Represents a playlist in the music library
+ * Represents a playlist in the music library.
+ *
+ * A song is in a playlist at most once. Membership is by identity (songs can be edited, so
+ * their equality can change) and kept in a set beside the ordered list, so checking or
+ * rejecting a song takes constant time however long the playlist is.
  */
 @JsonIgnoreProperties(ignoreUnknown = true) // Ignore unknown properties during JSON deserialization
 public class Playlist {
@@ -17,9 +26,11 @@ public class Playlist {
     private String name; // Playlist name, must be unique
     private String description; // Optional description
     private List<Song> songs; // Songs in the playlist
+    private final Set<Song> members = Collections.newSetFromMap(new IdentityHashMap<>()); // the same songs, for lookups
     private LocalDateTime createdDate; // Date the playlist was created
     private LocalDateTime lastModified; // Date the playlist was last modified
     private String coverImageUrl; // URL to the playlist cover image
+    private String displayText; // Cached getDisplayText, cleared whenever the playlist changes
 
     /*
      * Constructor with name only
@@ -61,7 +72,7 @@ public class Playlist {
      * Add song to playlist if not already present
      */
     public void addSong(Song song) {
-        if (song != null && !songs.contains(song)) {
+        if (song != null && members.add(song)) {
             songs.add(song);
             updateLastModified();
         }
@@ -71,19 +82,29 @@ public class Playlist {
      * Add song at specific index if not already present
      */
     public void addSong(int index, Song song) {
-        if (song != null && !songs.contains(song)) {
-            if (index >= 0 && index <= songs.size()) {
-                songs.add(index, song);
-                updateLastModified();
-            }
+        if (song != null && index >= 0 && index <= songs.size() && members.add(song)) {
+            songs.add(index, song);
+            updateLastModified();
+        }
+    }
+
+    /*
+     * Append the songs not already present, in order. Returns true if any was added.
+     */
+    public boolean addAll(Collection<Song> batch) {
+        if (appendAll(batch)) {
+            updateLastModified();
+            return true;
         }
+        return false;
     }
 
     /*
      * Remove song from playlist by object
      */
     public void removeSong(Song song) {
-        if (songs.remove(song)) {
+        if (song != null && members.remove(song)) {
+            songs.remove(indexOf(song));
             updateLastModified();
         }
     }
@@ -93,11 +114,27 @@ public class Playlist {
      */
     public void removeSong(int index) {
         if (index >= 0 && index < songs.size()) {
-            songs.remove(index);
+            members.remove(songs.remove(index));
             updateLastModified();
         }
     }
 
+    /*
+     * Remove every song that is in the batch, in one pass. Returns true if any was removed.
+     */
+    public boolean removeAll(Collection<Song> batch) {
+        Set<Song> remove = identitySet(batch);
+        return removeWhere(remove, true);
+    }
+
+    /*
+     * Remove every song that is not in the batch, in one pass. Returns true if any was removed.
+     */
+    public boolean retainAll(Collection<Song> batch) {
+        Set<Song> keep = identitySet(batch);
+        return removeWhere(keep, false);
+    }
+
     /*
      * Move song from one index to another within the playlist
      */
@@ -123,6 +160,7 @@ public class Playlist {
      */
     public void clearPlaylist() {
         songs.clear();
+        members.clear();
         updateLastModified();
     }
 
@@ -147,18 +185,60 @@ public class Playlist {
         updateLastModified();
     }
 
+    /*
+     * Read-only view of the songs in playlist order; it follows later changes, so copy it
+     * before changing the playlist while iterating
+     */
     public List<Song> getSongs() {
-        return new ArrayList<>(songs);
+        return Collections.unmodifiableList(songs);
+    }
+
+    /*
+     * Replace the songs when reading JSON, leaving lastModified as read
+     */
+    @JsonProperty("songs")
+    private void setSongsFromJson(List<Song> list) {
+        songs.clear();
+        members.clear();
+        if (list != null) {
+            appendAll(list);
+        }
+    }
+
+    /*
+     * Song at the given position in the playlist
+     */
+    public Song getSong(int index) {
+        return songs.get(index);
+    }
+
+    /*
+     * Position of the song in the playlist, or -1 if it is not in it
+     */
+    public int indexOfSong(Song song) {
+        return members.contains(song) ? indexOf(song) : -1;
+    }
+
+    public boolean containsSong(Song song) {
+        return members.contains(song);
     }
 
     public LocalDateTime getCreatedDate() {
         return createdDate;
     }
 
+    public void setCreatedDate(LocalDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
+
     public LocalDateTime getLastModified() {
         return lastModified;
     }
 
+    public void setLastModified(LocalDateTime lastModified) {
+        this.lastModified = lastModified;
+    }
+
     public String getCoverImageUrl() {
         return coverImageUrl;
     }
@@ -184,14 +264,66 @@ public class Playlist {
     public String getFormattedDuration() {
         int totalSeconds = getTotalDurationSeconds();
         int hours = totalSeconds / 3600;
-        int minutes = (totalSeconds % 3600) / 60;
-        int seconds = totalSeconds % 60;
-
         if (hours > 0) {
-            return String.format("%d:%02d:%02d", hours, minutes, seconds);
-        } else {
-            return String.format("%d:%02d", minutes, seconds);
+            int minutes = (totalSeconds % 3600) / 60;
+            return hours + (minutes < 10 ? ":0" : ":") + Song.formatDuration(totalSeconds % 3600);
+        }
+        return Song.formatDuration(totalSeconds);
+    }
+
+    /*
+     * Get the list display text "Name (N songs, duration)". Cached until the playlist is
+     * changed, so list cells do not sum the songs' durations on every update; an in-place
+     * change to a song's duration shows after the next playlist change.
+     */
+    @JsonIgnore
+    public String getDisplayText() {
+        String text = displayText;
+        if (text == null) {
+            text = name + " (" + songs.size() + " songs, " + getFormattedDuration() + ")";
+            displayText = text;
+        }
+        return text;
+    }
+
+    private boolean appendAll(Collection<Song> batch) {
+        boolean changed = false;
+        for (Song song : batch) {
+            if (song != null && members.add(song)) {
+                songs.add(song);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /*
+     * Remove the songs whose membership in set equals inSet, updating lastModified once
+     */
+    private boolean removeWhere(Set<Song> set, boolean inSet) {
+        boolean changed = songs.removeIf(song -> set.contains(song) == inSet && members.remove(song));
+        if (changed) {
+            updateLastModified();
+        }
+        return changed;
+    }
+
+    private static Set<Song> identitySet(Collection<Song> batch) {
+        Set<Song> set = Collections.newSetFromMap(new IdentityHashMap<>(batch.size()));
+        set.addAll(batch);
+        return set;
+    }
+
+    /*
+     * Position of a song known to be in the playlist
+     */
+    private int indexOf(Song song) {
+        for (int i = 0; i < songs.size(); i++) {
+            if (songs.get(i) == song) {
+                return i;
+            }
         }
+        return -1;
     }
 
     /*
@@ -199,6 +331,7 @@ public class Playlist {
      */
     private void updateLastModified() {
         this.lastModified = LocalDateTime.now();
+        this.displayText = null;
     }
 
     @Override
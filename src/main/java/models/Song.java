@@ -4,14 +4,18 @@ import java.io.File;
 import java.time.LocalDate;
 import java.util.Objects;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 /**
  * Represents a song in the music library
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
+@JsonPropertyOrder({"audioFile", "filePath"}) // Written first so the stored size/mtime below win on load
 public class Song {
 
+    private int id; // Stable id assigned by MusicLibrary, 0 until then
     private String title; // Song title
     private Artist artist; // Song artist
     private Album album; // Song album
@@ -21,7 +25,11 @@ public class Song {
     private LocalDate dateAdded; // Date the song was added
     private File audioFile; // Audio file
     private String filePath; // File path
-    private long fileSizeBytes;
+    private long fileSizeBytes; // File size when last imported
+    private long lastModified; // File modification time (epoch millis) when last imported
+    private String durationText; // Cached getFormattedDuration, null when stale
+    private String displayText; // Cached getDisplayText, null when stale
+    private String displayArtistName; // Artist name the cached display text was built with
 
     /*
      * Constructor with title and artist only
@@ -67,12 +75,21 @@ public class Song {
     /*
      * Getters and setters
      */
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public String getTitle() {
         return title;
     }
 
     public void setTitle(String title) {
         this.title = title;
+        this.displayText = null;
     }
 
     public Artist getArtist() {
@@ -81,6 +98,7 @@ public class Song {
 
     public void setArtist(Artist artist) {
         this.artist = artist;
+        this.displayText = null;
     }
 
     public Album getAlbum() {
@@ -97,6 +115,8 @@ public class Song {
 
     public void setDurationSeconds(int durationSeconds) {
         this.durationSeconds = durationSeconds;
+        this.durationText = null;
+        this.displayText = null;
     }
 
     public String getGenre() {
@@ -131,6 +151,7 @@ public class Song {
         this.audioFile = audioFile;
         this.filePath = audioFile != null ? audioFile.getAbsolutePath() : null;
         this.fileSizeBytes = audioFile != null ? audioFile.length() : 0;
+        this.lastModified = audioFile != null ? audioFile.lastModified() : 0;
     }
 
     public String getFilePath() {
@@ -142,20 +163,72 @@ public class Song {
         if (filePath != null) {
             this.audioFile = new File(filePath);
             this.fileSizeBytes = audioFile.exists() ? audioFile.length() : 0;
+            this.lastModified = audioFile.lastModified();
         }
     }
 
+    /*
+     * Restore the file path and fingerprint from persisted data without touching the disk
+     */
+    public void setFileInfo(String filePath, long fileSizeBytes, long lastModified) {
+        this.filePath = filePath;
+        this.audioFile = filePath != null ? new File(filePath) : null;
+        this.fileSizeBytes = fileSizeBytes;
+        this.lastModified = lastModified;
+    }
+
     public long getFileSizeBytes() {
         return fileSizeBytes;
     }
 
+    public void setFileSizeBytes(long fileSizeBytes) {
+        this.fileSizeBytes = fileSizeBytes;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
     /*
-     * Get formatted duration as mm:ss
+     * Get formatted duration as mm:ss, computed once per duration
      */
     public String getFormattedDuration() {
-        int minutes = durationSeconds / 60;
-        int seconds = durationSeconds % 60;
-        return String.format("%d:%02d", minutes, seconds);
+        String formatted = durationText;
+        if (formatted == null) {
+            formatted = formatDuration(durationSeconds);
+            durationText = formatted;
+        }
+        return formatted;
+    }
+
+    /*
+     * Get the list display text "Title - Artist (m:ss)", cached until the title, artist or
+     * duration changes so list cells can reuse it while scrolling
+     */
+    @JsonIgnore
+    public String getDisplayText() {
+        String artistName = artist != null ? artist.getName() : null;
+        String text = displayText;
+        // The artist can be renamed in place, so check the name the text was built with
+        if (text == null || artistName != displayArtistName) {
+            text = title + " - " + artistName + " (" + getFormattedDuration() + ")";
+            displayText = text;
+            displayArtistName = artistName;
+        }
+        return text;
+    }
+
+    /*
+     * Format seconds as m:ss without going through String.format
+     */
+    static String formatDuration(int totalSeconds) {
+        int minutes = totalSeconds / 60;
+        int seconds = totalSeconds % 60;
+        return minutes + (seconds < 10 ? ":0" : ":") + seconds;
     }
 
     /*
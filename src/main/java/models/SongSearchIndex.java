@@ -0,0 +1,289 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Incrementally maintained inverted index used by MusicLibrary.searchSongs.
+ * Each song's title, artist, album and genre are split into lowercase tokens, and every
+ * distinct token is further indexed by its 1-, 2- and 3-grams. A query is answered by
+ * resolving its own tokens to the indexed tokens that contain them, intersecting their
+ * postings and verifying the few remaining candidates with a plain substring check, so
+ * results are identical to a linear "field contains query" scan.
+ */
+class SongSearchIndex {
+
+    private static final int GRAM_SIZE = 3; // longest n-gram indexed per token
+    private static final int INTERRUPT_CHECK_MASK = 1023; // check for interruption every 1024 candidates
+
+    private final Map<Song, Doc> docs = new IdentityHashMap<>(); // indexed songs by reference
+    private final Map<String, Set<Doc>> postings = new HashMap<>(); // token -> songs containing it
+    private final Map<String, Set<String>> grams = new HashMap<>(); // n-gram -> tokens containing it
+    private long nextSeq = 0; // insertion counter used to keep results in library order
+
+    /*
+     * Indexed, lowercased fields of a single song
+     */
+    private static final class Doc {
+
+        private final Song song;
+        private final long seq;
+        private String[] fields;
+        private Set<String> tokens;
+
+        Doc(Song song, long seq) {
+            this.song = song;
+            this.seq = seq;
+        }
+
+        boolean matches(String lowerQuery) {
+            for (String field : fields) {
+                if (field.contains(lowerQuery)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /*
+     * Add a song to the index (no-op if already indexed)
+     */
+    void add(Song song) {
+        if (song == null || docs.containsKey(song)) {
+            return;
+        }
+        Doc doc = new Doc(song, nextSeq++);
+        docs.put(song, doc);
+        indexFields(doc);
+    }
+
+    /*
+     * Remove a song from the index
+     */
+    void remove(Song song) {
+        Doc doc = song != null ? docs.remove(song) : null;
+        if (doc != null) {
+            unindexFields(doc);
+        }
+    }
+
+    /*
+     * Re-read a song's fields after its metadata was edited, keeping its position
+     */
+    void update(Song song) {
+        Doc doc = song != null ? docs.get(song) : null;
+        if (doc != null) {
+            unindexFields(doc);
+            indexFields(doc);
+        }
+    }
+
+    /*
+     * Remove every song from the index
+     */
+    void clear() {
+        docs.clear();
+        postings.clear();
+        grams.clear();
+    }
+
+    /*
+     * Find songs whose title, artist, album or genre contains the query (case-insensitive),
+     * in the order they were added
+     */
+    List<Song> search(String query) {
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    /*
+     * Find the first limit matching songs in the order they were added. Gives up and returns
+     * an empty list if the calling thread is interrupted, e.g. because the query was superseded.
+     */
+    List<Song> search(String query, int limit) {
+        String lowerQuery = query.toLowerCase();
+        List<String> queryTokens = tokenize(lowerQuery);
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        Collection<Doc> candidates;
+        if (queryTokens.isEmpty()) {
+            // Blank or punctuation-only query: nothing to look up, fall back to a scan
+            candidates = docs.values();
+        } else {
+            Set<Doc> matching = null;
+            for (String queryToken : queryTokens) {
+                Set<Doc> docsForToken = new HashSet<>();
+                for (String token : tokensContaining(queryToken)) {
+                    Set<Doc> posting = postings.get(token);
+                    if (matching == null) {
+                        docsForToken.addAll(posting);
+                    } else {
+                        // Only keep songs that also matched the previous query tokens
+                        for (Doc doc : posting) {
+                            if (matching.contains(doc)) {
+                                docsForToken.add(doc);
+                            }
+                        }
+                    }
+                }
+                matching = docsForToken;
+                if (matching.isEmpty() || Thread.currentThread().isInterrupted()) {
+                    return new ArrayList<>();
+                }
+            }
+            candidates = matching;
+        }
+
+        // Keep the limit earliest matches in a max-heap on insertion order; later candidates
+        // are rejected by sequence before paying for the substring check
+        PriorityQueue<Doc> earliest = new PriorityQueue<>(Math.min(limit, candidates.size()) + 1,
+                Comparator.comparingLong((Doc doc) -> doc.seq).reversed());
+        int checked = 0;
+        for (Doc doc : candidates) {
+            if ((++checked & INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                return new ArrayList<>();
+            }
+            if (earliest.size() == limit && doc.seq > earliest.peek().seq) {
+                continue;
+            }
+            if (doc.matches(lowerQuery)) {
+                earliest.add(doc);
+                if (earliest.size() > limit) {
+                    earliest.poll();
+                }
+            }
+        }
+
+        Song[] result = new Song[earliest.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = earliest.poll().song;
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /*
+     * Resolve a query token to the indexed tokens that contain it as a substring
+     */
+    private Set<String> tokensContaining(String queryToken) {
+        if (queryToken.length() <= GRAM_SIZE) {
+            Set<String> exact = grams.get(queryToken);
+            return exact != null ? exact : new HashSet<>();
+        }
+
+        // Every trigram must occur in a matching token; verify the rarest trigram's tokens
+        Set<String> smallest = null;
+        for (int i = 0; i + GRAM_SIZE <= queryToken.length(); i++) {
+            Set<String> tokens = grams.get(queryToken.substring(i, i + GRAM_SIZE));
+            if (tokens == null) {
+                return new HashSet<>();
+            }
+            if (smallest == null || tokens.size() < smallest.size()) {
+                smallest = tokens;
+            }
+        }
+
+        Set<String> result = new HashSet<>();
+        for (String token : smallest) {
+            if (token.contains(queryToken)) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    private void indexFields(Doc doc) {
+        Song song = doc.song;
+        doc.fields = new String[] {
+            lower(song.getTitle()),
+            song.getArtist() != null ? lower(song.getArtist().getName()) : "",
+            song.getAlbum() != null ? lower(song.getAlbum().getTitle()) : "",
+            lower(song.getGenre())
+        };
+        doc.tokens = new HashSet<>();
+        for (String field : doc.fields) {
+            doc.tokens.addAll(tokenize(field));
+        }
+        for (String token : doc.tokens) {
+            Set<Doc> posting = postings.get(token);
+            if (posting == null) {
+                posting = new HashSet<>();
+                postings.put(token, posting);
+                addGrams(token);
+            }
+            posting.add(doc);
+        }
+    }
+
+    private void unindexFields(Doc doc) {
+        for (String token : doc.tokens) {
+            Set<Doc> posting = postings.get(token);
+            if (posting != null) {
+                posting.remove(doc);
+                if (posting.isEmpty()) {
+                    postings.remove(token);
+                    removeGrams(token);
+                }
+            }
+        }
+    }
+
+    private void addGrams(String token) {
+        for (int n = 1; n <= GRAM_SIZE; n++) {
+            for (int i = 0; i + n <= token.length(); i++) {
+                grams.computeIfAbsent(token.substring(i, i + n), k -> new HashSet<>()).add(token);
+            }
+        }
+    }
+
+    private void removeGrams(String token) {
+        for (int n = 1; n <= GRAM_SIZE; n++) {
+            for (int i = 0; i + n <= token.length(); i++) {
+                String gram = token.substring(i, i + n);
+                Set<String> tokens = grams.get(gram);
+                if (tokens != null) {
+                    tokens.remove(token);
+                    if (tokens.isEmpty()) {
+                        grams.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase() : "";
+    }
+
+    /*
+     * Split lowercase text into runs of letters and digits
+     */
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(text.substring(start));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,421 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import models.Album;
+import models.Artist;
+import models.MusicLibrary;
+import models.Playlist;
+import models.Song;
+
+/**
+ * Compact, versioned binary snapshot of the MusicLibrary.
+ * All strings are written once to a deduplicated string table, and artists, albums and songs
+ * refer to each other (and to strings) by integer index instead of repeating nested objects
+ * the way the JSON snapshot does. Loading rebuilds the library directly from the tables.
+ *
+ * Layout: magic, version, journal sequence, string table, artists, albums, songs, playlists.
+ * The journal sequence is the last LibraryJournal entry already folded into the snapshot.
+ * Each artist, album and song also carries its MusicLibrary id, which the library keeps on load.
+ */
+public class BinaryLibraryIO {
+
+    private static final int MAGIC = 0x4F544C42; // "OTLB"
+    private static final int VERSION = 3; // current format version (1 had no journal sequence, 2 no entity ids)
+    private static final int NONE = -1; // reference to a null string/entity
+    private static final Metrics.Timer ENCODE_TIME = Metrics.getInstance().timer("library_save_encode_seconds",
+            "Time to encode a library snapshot, holding the library's read lock");
+    private static final Metrics.Timer WRITE_TIME = Metrics.getInstance().timer("library_save_write_seconds",
+            "Time to write an encoded library snapshot to disk");
+    private static final Metrics.Histogram SAVE_BYTES = Metrics.getInstance().histogram("library_save_bytes",
+            "Size of written library snapshots");
+    private static final Metrics.Timer LOAD_TIME = Metrics.getInstance().timer("library_load_seconds",
+            "Time to load a library snapshot");
+    private static final Metrics.Histogram LOAD_BYTES = Metrics.getInstance().histogram("library_load_bytes",
+            "Size of loaded library snapshots");
+    private static final long NO_DATE = Long.MIN_VALUE; // marker for a null LocalDate
+
+    /*
+     * Save the library to the given file, replacing it atomically
+     */
+    public static void save(MusicLibrary lib, File outFile) throws IOException {
+        save(lib, outFile, 0);
+    }
+
+    /*
+     * Save the library to the given file, recording the last journal entry it includes
+     */
+    public static void save(MusicLibrary lib, File outFile, long journalSeq) throws IOException {
+        write(encode(lib, journalSeq), outFile);
+    }
+
+    /*
+     * Encode the library into an in-memory snapshot, so it can be written off the calling thread.
+     * The whole encoding runs under the library's read lock: entities are read more than once
+     * (to build the string table, then to write it), so they must not change in between.
+     */
+    public static byte[] encode(MusicLibrary lib, long journalSeq) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return lib.read(() -> {
+                try {
+                    return encodeSnapshot(lib, journalSeq);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            ENCODE_TIME.recordSince(start);
+        }
+    }
+
+    private static byte[] encodeSnapshot(MusicLibrary lib, long journalSeq) throws IOException {
+        // Assign indexes to every entity reachable from the library
+        Map<Artist, Integer> artistIds = new IdentityHashMap<>();
+        Map<Album, Integer> albumIds = new IdentityHashMap<>();
+        Map<Song, Integer> songIds = new IdentityHashMap<>();
+        List<Artist> artists = new ArrayList<>();
+        List<Album> albums = new ArrayList<>();
+        List<Song> songs = new ArrayList<>();
+        List<Song> librarySongs = new ArrayList<>();
+        List<Playlist> playlists = new ArrayList<>();
+
+        librarySongs.addAll(lib.getAllSongs());
+        playlists.addAll(lib.getAllPlaylists());
+        for (Artist artist : lib.getAllArtists()) {
+            register(artist, artistIds, artists);
+        }
+        for (Album album : lib.getAllAlbums()) {
+            register(album.getArtist(), artistIds, artists);
+            register(album, albumIds, albums);
+        }
+        for (Song song : librarySongs) {
+            registerSong(song, artistIds, artists, albumIds, albums, songIds, songs);
+        }
+        // Playlists may hold songs that are not (or no longer) in the library
+        for (Playlist playlist : playlists) {
+            for (Song song : playlist.getSongs()) {
+                registerSong(song, artistIds, artists, albumIds, albums, songIds, songs);
+            }
+        }
+
+        StringTable strings = new StringTable();
+        for (Artist artist : artists) {
+            strings.add(artist.getName());
+            strings.add(artist.getBiography());
+            strings.add(artist.getImageUrl());
+        }
+        for (Album album : albums) {
+            strings.add(album.getTitle());
+            strings.add(album.getGenre());
+            strings.add(album.getCoverImageUrl());
+        }
+        for (Song song : songs) {
+            strings.add(song.getTitle());
+            strings.add(song.getGenre());
+            strings.add(song.getFilePath());
+        }
+        for (Playlist playlist : playlists) {
+            strings.add(playlist.getName());
+            strings.add(playlist.getDescription());
+            strings.add(playlist.getCoverImageUrl());
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSeq);
+
+            out.writeInt(strings.values.size());
+            for (String value : strings.values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(artists.size());
+            for (Artist artist : artists) {
+                out.writeInt(strings.ref(artist.getName()));
+                out.writeInt(strings.ref(artist.getBiography()));
+                out.writeInt(strings.ref(artist.getImageUrl()));
+                out.writeInt(artist.getId());
+            }
+
+            out.writeInt(albums.size());
+            for (Album album : albums) {
+                out.writeInt(strings.ref(album.getTitle()));
+                out.writeInt(ref(album.getArtist(), artistIds));
+                writeDate(out, album.getReleaseDate());
+                out.writeInt(strings.ref(album.getGenre()));
+                out.writeInt(strings.ref(album.getCoverImageUrl()));
+                out.writeInt(album.getId());
+            }
+
+            Map<Song, Boolean> inLibrary = new IdentityHashMap<>();
+            for (Song song : librarySongs) {
+                inLibrary.put(song, Boolean.TRUE);
+            }
+            out.writeInt(songs.size());
+            for (Song song : songs) {
+                out.writeBoolean(inLibrary.containsKey(song));
+                out.writeInt(strings.ref(song.getTitle()));
+                out.writeInt(ref(song.getArtist(), artistIds));
+                out.writeInt(ref(song.getAlbum(), albumIds));
+                out.writeInt(song.getDurationSeconds());
+                out.writeInt(strings.ref(song.getGenre()));
+                out.writeInt(song.getTrackNumber());
+                writeDate(out, song.getDateAdded());
+                out.writeInt(strings.ref(song.getFilePath()));
+                out.writeLong(song.getFileSizeBytes());
+                out.writeLong(song.getLastModified());
+                out.writeInt(song.getId());
+            }
+
+            out.writeInt(playlists.size());
+            for (Playlist playlist : playlists) {
+                out.writeInt(strings.ref(playlist.getName()));
+                out.writeInt(strings.ref(playlist.getDescription()));
+                out.writeInt(strings.ref(playlist.getCoverImageUrl()));
+                writeDateTime(out, playlist.getCreatedDate());
+                writeDateTime(out, playlist.getLastModified());
+                List<Song> playlistSongs = playlist.getSongs();
+                out.writeInt(playlistSongs.size());
+                for (Song song : playlistSongs) {
+                    out.writeInt(songIds.get(song));
+                }
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    /*
+     * Write an encoded snapshot to the given file, replacing it atomically
+     */
+    public static void write(byte[] snapshot, File outFile) throws IOException {
+        long start = System.nanoTime();
+        File tmp = new File(outFile.getAbsoluteFile().getParentFile(), outFile.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(snapshot);
+        }
+        try {
+            Files.move(tmp.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        WRITE_TIME.recordSince(start);
+        SAVE_BYTES.record(snapshot.length);
+    }
+
+    /*
+     * Load the library from the given file, replacing current library content.
+     * Returns the last journal sequence included in the snapshot (0 if none).
+     */
+    public static long load(MusicLibrary lib, File inFile) throws IOException {
+        if (!inFile.exists()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(inFile), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an OpenTunes library snapshot: " + inFile);
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported library snapshot version " + version + " in " + inFile);
+            }
+            long journalSeq = version >= 2 ? in.readLong() : 0;
+
+            String[] strings = new String[in.readInt()];
+            byte[] buffer = new byte[256];
+            for (int i = 0; i < strings.length; i++) {
+                int length = in.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                in.readFully(buffer, 0, length);
+                strings[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            }
+
+            Artist[] artists = new Artist[in.readInt()];
+            for (int i = 0; i < artists.length; i++) {
+                artists[i] = new Artist(str(strings, in.readInt()), str(strings, in.readInt()), str(strings, in.readInt()));
+                if (version >= 3) {
+                    artists[i].setId(in.readInt());
+                }
+            }
+
+            Album[] albums = new Album[in.readInt()];
+            for (int i = 0; i < albums.length; i++) {
+                String title = str(strings, in.readInt());
+                Artist artist = entity(artists, in.readInt());
+                LocalDate releaseDate = readDate(in);
+                Album album = new Album(title, artist, releaseDate, str(strings, in.readInt()));
+                album.setCoverImageUrl(str(strings, in.readInt()));
+                if (version >= 3) {
+                    album.setId(in.readInt());
+                }
+                if (artist != null) {
+                    artist.addAlbum(album);
+                }
+                albums[i] = album;
+            }
+
+            Song[] songs = new Song[in.readInt()];
+            List<Song> librarySongs = new ArrayList<>(songs.length);
+            for (int i = 0; i < songs.length; i++) {
+                boolean inLibrary = in.readBoolean();
+                Song song = new Song();
+                song.setTitle(str(strings, in.readInt()));
+                song.setArtist(entity(artists, in.readInt()));
+                Album album = entity(albums, in.readInt());
+                song.setDurationSeconds(in.readInt());
+                song.setGenre(str(strings, in.readInt()));
+                song.setTrackNumber(in.readInt());
+                song.setDateAdded(readDate(in));
+                song.setFileInfo(str(strings, in.readInt()), in.readLong(), in.readLong());
+                if (version >= 3) {
+                    song.setId(in.readInt());
+                }
+                if (album != null) {
+                    album.addSong(song);
+                }
+                if (inLibrary) {
+                    librarySongs.add(song);
+                }
+                songs[i] = song;
+            }
+
+            Playlist[] playlists = new Playlist[in.readInt()];
+            for (int i = 0; i < playlists.length; i++) {
+                Playlist playlist = new Playlist(str(strings, in.readInt()), str(strings, in.readInt()));
+                playlist.setCoverImageUrl(str(strings, in.readInt()));
+                playlist.setCreatedDate(readDateTime(in));
+                LocalDateTime lastModified = readDateTime(in);
+                Song[] playlistSongs = new Song[in.readInt()];
+                for (int j = 0; j < playlistSongs.length; j++) {
+                    playlistSongs[j] = songs[in.readInt()];
+                }
+                playlist.addAll(Arrays.asList(playlistSongs));
+                playlist.setLastModified(lastModified);
+                playlists[i] = playlist;
+            }
+
+            // Replace current library content with the snapshot in one step, so readers never
+            // see a half-loaded library
+            lib.update(() -> {
+                lib.clearLibrary();
+                for (Artist artist : artists) {
+                    lib.addArtist(artist);
+                }
+                for (Album album : albums) {
+                    lib.addAlbum(album);
+                }
+                lib.addSongs(librarySongs);
+                for (Playlist playlist : playlists) {
+                    lib.addPlaylist(playlist);
+                }
+            });
+            LOAD_TIME.recordSince(start);
+            LOAD_BYTES.record(inFile.length());
+            return journalSeq;
+        }
+    }
+
+    /*
+     * Deduplicated string table built while saving
+     */
+    private static final class StringTable {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        void add(String value) {
+            if (value != null && !ids.containsKey(value)) {
+                ids.put(value, values.size());
+                values.add(value);
+            }
+        }
+
+        int ref(String value) {
+            return value != null ? ids.get(value) : NONE;
+        }
+    }
+
+    private static <T> void register(T entity, Map<T, Integer> ids, List<T> list) {
+        if (entity != null && !ids.containsKey(entity)) {
+            ids.put(entity, list.size());
+            list.add(entity);
+        }
+    }
+
+    private static void registerSong(Song song, Map<Artist, Integer> artistIds, List<Artist> artists,
+            Map<Album, Integer> albumIds, List<Album> albums, Map<Song, Integer> songIds, List<Song> songs) {
+        register(song.getArtist(), artistIds, artists);
+        if (song.getAlbum() != null) {
+            register(song.getAlbum().getArtist(), artistIds, artists);
+            register(song.getAlbum(), albumIds, albums);
+        }
+        register(song, songIds, songs);
+    }
+
+    private static <T> int ref(T entity, Map<T, Integer> ids) {
+        return entity != null ? ids.get(entity) : NONE;
+    }
+
+    private static String str(String[] strings, int ref) {
+        return ref == NONE ? null : strings[ref];
+    }
+
+    private static <T> T entity(T[] entities, int ref) {
+        return ref == NONE ? null : entities[ref];
+    }
+
+    private static void writeDate(DataOutputStream out, LocalDate date) throws IOException {
+        out.writeLong(date != null ? date.toEpochDay() : NO_DATE);
+    }
+
+    private static LocalDate readDate(DataInputStream in) throws IOException {
+        long epochDay = in.readLong();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static void writeDateTime(DataOutputStream out, LocalDateTime dateTime) throws IOException {
+        out.writeBoolean(dateTime != null);
+        if (dateTime != null) {
+            out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(dateTime.getNano());
+        }
+    }
+
+    private static LocalDateTime readDateTime(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    }
+}
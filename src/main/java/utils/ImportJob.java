@@ -0,0 +1,168 @@
+package utils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import models.Song;
+
+/**
+ * A bulk import or rescan running on a background thread, started through MusicImporter.
+ * Progress and newly committed songs are reported to a Listener while the import runs, and
+ * the job can be paused, resumed and cancelled at any time.
+ *
+ * Cancelling stops the walker, parsers and committer at their next checkpoint. Songs that
+ * were already committed stay in the library; a cancelled rescan removes nothing.
+ */
+public class ImportJob {
+
+    private static final long PROGRESS_INTERVAL_NANOS = 100_000_000L; // min time between progress reports
+
+    /**
+     * Receives import events. Called on the import thread, never on the JavaFX thread.
+     */
+    public interface Listener {
+        void onProgress(ImportProgress progress);
+        void onSongsCommitted(List<Song> songs);
+        void onFinished(ImportResult result, ImportProgress progress);
+    }
+
+    private final Listener listener; // null if nobody listens, e.g. for synchronous imports
+    private final AtomicInteger scanned = new AtomicInteger();
+    private final AtomicInteger parsed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger committed = new AtomicInteger();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final long startNanos = System.nanoTime();
+    private volatile boolean cancelled;
+    private boolean paused; // guarded by this
+    private long pausedSince; // guarded by this; when the current pause began
+    private long pausedNanos; // guarded by this; total time spent paused before the current pause
+    private long lastProgressNanos; // import thread only
+    private volatile ImportResult result;
+
+    ImportJob(Listener listener) {
+        this.listener = listener;
+    }
+
+    /*
+     * Run the import on a new daemon thread and report its result to the listener. An import
+     * that throws is reported as a result carrying the error, so the listener always hears
+     * that it finished.
+     */
+    void start(Supplier<ImportResult> work) {
+        Thread thread = new Thread(() -> {
+            try {
+                result = work.get();
+            } catch (RuntimeException e) {
+                ImportResult failed = new ImportResult();
+                failed.setError(e.getMessage() != null ? e.getMessage() : e.toString());
+                result = failed;
+            } finally {
+                done.countDown();
+            }
+            if (listener != null) {
+                listener.onFinished(result, getProgress());
+            }
+        }, "MusicImporter-Job");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Stop the import at the next checkpoint; also releases a paused import
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    /*
+     * Hold the import at the next checkpoint until resumed or cancelled
+     */
+    public synchronized void pause() {
+        if (!paused) {
+            paused = true;
+            pausedSince = System.nanoTime();
+        }
+    }
+
+    public synchronized void resume() {
+        if (paused) {
+            paused = false;
+            pausedNanos += System.nanoTime() - pausedSince;
+            notifyAll();
+        }
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /*
+     * Wait for the import to finish and return its result
+     */
+    public ImportResult await() throws InterruptedException {
+        done.await();
+        return result;
+    }
+
+    public ImportProgress getProgress() {
+        long paused;
+        synchronized (this) {
+            paused = pausedNanos + (this.paused ? System.nanoTime() - pausedSince : 0);
+        }
+        return new ImportProgress(scanned.get(), parsed.get(), failed.get(), committed.get(),
+                System.nanoTime() - startNanos - paused);
+    }
+
+    /*
+     * Checkpoint for the pipeline stages: block while paused.
+     * Returns false once the job is cancelled.
+     */
+    synchronized boolean awaitRunnable() throws InterruptedException {
+        while (paused && !cancelled) {
+            wait();
+        }
+        return !cancelled;
+    }
+
+    void fileScanned() {
+        scanned.incrementAndGet();
+    }
+
+    void fileParsed(boolean success) {
+        (success ? parsed : failed).incrementAndGet();
+    }
+
+    /*
+     * Called by the committing thread after each batch was added to the library
+     */
+    void songsCommitted(List<Song> songs) {
+        committed.addAndGet(songs.size());
+        if (listener != null && !songs.isEmpty()) {
+            listener.onSongsCommitted(songs);
+        }
+        reportProgress();
+    }
+
+    /*
+     * Report progress to the listener, at most once per PROGRESS_INTERVAL_NANOS
+     */
+    void reportProgress() {
+        long now = System.nanoTime();
+        if (listener != null && now - lastProgressNanos >= PROGRESS_INTERVAL_NANOS) {
+            lastProgressNanos = now;
+            listener.onProgress(getProgress());
+        }
+    }
+}
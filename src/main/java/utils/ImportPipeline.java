@@ -0,0 +1,318 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import models.MusicLibrary;
+import models.Song;
+
+/**
+ * Three-stage import pipeline used by MusicImporter for bulk imports.
+ * A walker thread lists the audio files under the given roots, a fixed pool of workers
+ * parses their tags in parallel, and the calling thread commits parsed tracks to the
+ * MusicLibrary in batches. Tracks are committed in the order the walker found them, so the
+ * resulting library and ImportResult match a sequential import.
+ *
+ * In rescan mode the walker is given the songs already known under the roots and skips
+ * files whose size and modification time still match; known songs whose files were not
+ * seen are removed from the library once the walk completes.
+ *
+ * Every stage counts its work on the ImportJob and waits at its checkpoints while the job
+ * is paused; once it is cancelled the stages stop and nothing further is committed.
+ */
+class ImportPipeline {
+
+    private static final int MAX_IN_FLIGHT = 1024; // files walked but not yet committed
+    private static final int COMMIT_BATCH_SIZE = 256; // max tracks added to the library at once
+    private static final long POLL_MILLIS = 100; // how often the committer checks for cancellation when idle
+
+    private final MusicLibrary library; // library receiving the imported songs
+    private final int parallelism; // number of tag-parsing threads
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT); // bounds memory and reorder buffer
+    private final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>(); // parser -> committer
+    private final Map<String, Song> known; // rescan only: songs by path not yet seen by the walker
+    private final ImportJob job; // progress counters and pause/cancel state
+    private int unchanged; // rescan only: files skipped by the walker, read after the end marker
+    private final List<String> unreadable = new ArrayList<>(); // paths the walker failed to list
+
+    /*
+     * Result of parsing a single file, or the walker's end-of-input marker
+     */
+    private static final class Outcome {
+
+        private final long seq; // position in walk order
+        private final File file;
+        private final Song existing; // rescan only: library song to update in place
+        private final MusicImporter.ParsedTrack track; // null on failure or end marker
+        private final String error;
+
+        private Outcome(long seq, File file, Song existing, MusicImporter.ParsedTrack track, String error) {
+            this.seq = seq;
+            this.file = file;
+            this.existing = existing;
+            this.track = track;
+            this.error = error;
+        }
+
+        static Outcome end(long seq) {
+            return new Outcome(seq, null, null, null, null);
+        }
+
+        boolean isEnd() {
+            return file == null;
+        }
+    }
+
+    ImportPipeline(MusicLibrary library, int parallelism) {
+        this(library, parallelism, null, new ImportJob(null));
+    }
+
+    /*
+     * Create a pipeline reporting to the given job. For a rescan, known maps the absolute path
+     * of every library song under the roots to the song, and is consumed by the walker.
+     */
+    ImportPipeline(MusicLibrary library, int parallelism, Map<String, Song> known, ImportJob job) {
+        this.library = library;
+        this.parallelism = Math.max(1, parallelism);
+        this.known = known;
+        this.job = job;
+    }
+
+    /*
+     * Import every audio file under the given files and directories
+     */
+    ImportResult run(List<File> roots) {
+        ImportResult result = new ImportResult();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "MusicImporter-Parser-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Thread walker = new Thread(() -> walk(roots, parsers), "MusicImporter-Walker");
+        walker.setDaemon(true);
+        walker.start();
+
+        try {
+            commitAll(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (job.isCancelled() || Thread.currentThread().isInterrupted()) {
+                walker.interrupt();
+            }
+            parsers.shutdownNow();
+        }
+        try {
+            TagCache.getInstance().save();
+        } catch (IOException e) {
+            System.err.println("Error saving tag cache: " + e.getMessage());
+        }
+        return result;
+    }
+
+    /*
+     * Walker stage: hand every new or changed audio file to the parser pool, then post the end marker
+     */
+    private void walk(List<File> roots, ExecutorService parsers) {
+        long[] count = {0};
+        FileVisitor<Path> visitor = new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || !MusicImporter.isAudioFileName(path.getFileName().toString())) {
+                    return FileVisitResult.CONTINUE;
+                }
+                File file = path.toFile();
+                Song existing = known != null ? known.remove(file.getAbsolutePath()) : null;
+                if (existing != null && existing.getFileSizeBytes() == attrs.size()
+                        && existing.getLastModified() == attrs.lastModifiedTime().toMillis()) {
+                    unchanged++;
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    if (!job.awaitRunnable()) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return FileVisitResult.TERMINATE;
+                }
+                long fileSeq = count[0]++;
+                job.fileScanned();
+                parsers.execute(() -> outcomes.add(parse(fileSeq, file, existing)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) {
+                // Unreadable directory or symlink loop; skip it like File.listFiles would
+                unreadable.add(path.toFile().getAbsolutePath());
+                return FileVisitResult.CONTINUE;
+            }
+        };
+
+        try {
+            for (File root : roots) {
+                Files.walkFileTree(root.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, visitor);
+                if (Thread.currentThread().isInterrupted() || job.isCancelled()) {
+                    // Import was abandoned by the committing thread or cancelled
+                    return;
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            return;
+        } catch (IOException | RuntimeException e) {
+            // Unreadable root; commit whatever was found so far
+        }
+        outcomes.add(Outcome.end(count[0]));
+    }
+
+    /*
+     * Parser stage: read tags on a worker thread
+     */
+    private Outcome parse(long seq, File file, Song existing) {
+        try {
+            if (!job.awaitRunnable()) {
+                return new Outcome(seq, file, existing, null, "Import cancelled");
+            }
+        } catch (InterruptedException e) {
+            return new Outcome(seq, file, existing, null, "Import cancelled");
+        }
+        try {
+            Outcome outcome = new Outcome(seq, file, existing, MusicImporter.parseAudioFile(file), null);
+            job.fileParsed(true);
+            return outcome;
+        } catch (Throwable e) {
+            // Errors too (e.g. a StackOverflowError on a malformed tag): commitAll waits for every seq
+            job.fileParsed(false);
+            return new Outcome(seq, file, existing, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    /*
+     * Commit stage: restore walk order and add tracks to the library in batches
+     */
+    private void commitAll(ImportResult result) throws InterruptedException {
+        Map<Long, Outcome> pending = new HashMap<>();
+        List<Outcome> drained = new ArrayList<>();
+        List<Outcome> batch = new ArrayList<>();
+        long next = 0;
+
+        while (true) {
+            Outcome first = outcomes.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (!job.awaitRunnable()) {
+                return;
+            }
+            if (first == null) {
+                job.reportProgress();
+                continue;
+            }
+            drained.add(first);
+            outcomes.drainTo(drained);
+            for (Outcome outcome : drained) {
+                pending.put(outcome.seq, outcome);
+            }
+            drained.clear();
+
+            Outcome outcome;
+            while ((outcome = pending.remove(next)) != null) {
+                if (outcome.isEnd()) {
+                    commit(batch, result);
+                    removeMissing(result);
+                    return;
+                }
+                batch.add(outcome);
+                next++;
+                if (batch.size() >= COMMIT_BATCH_SIZE) {
+                    commit(batch, result);
+                }
+            }
+            commit(batch, result);
+        }
+    }
+
+    private void commit(List<Outcome> batch, ImportResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // One write per batch: artist/album lookups and the added songs are applied atomically
+        List<Song> songs = new ArrayList<>(batch.size());
+        library.update(() -> {
+            for (Outcome outcome : batch) {
+                if (outcome.track == null) {
+                    result.addFailure(outcome.file, outcome.error);
+                    continue;
+                }
+                try {
+                    if (outcome.existing != null) {
+                        MusicImporter.updateSong(outcome.existing, outcome.track, library);
+                        result.addSuccess(outcome.existing);
+                    } else {
+                        Song song = MusicImporter.createSong(outcome.track, library);
+                        if (library.addSong(song)) {
+                            song.getAlbum().addSong(song);
+                            songs.add(song);
+                            result.addSuccess(song);
+                        } else {
+                            // Same path or tags as a song already in the library, e.g. a copy in another folder
+                            result.addDuplicate(outcome.file);
+                        }
+                    }
+                } catch (Exception e) {
+                    result.addFailure(outcome.file, e.getMessage());
+                }
+            }
+        });
+        inFlight.release(batch.size());
+        batch.clear();
+        job.songsCommitted(songs);
+    }
+
+    /*
+     * Rescan only: drop songs whose files were not found by the walker
+     */
+    private void removeMissing(ImportResult result) {
+        if (known == null) {
+            return;
+        }
+        result.addUnchanged(unchanged);
+        for (Song song : known.values()) {
+            if (isUnderUnreadable(song.getFilePath())) {
+                // Could not look, e.g. a share went offline mid-scan; keep the song
+                continue;
+            }
+            library.removeSong(song);
+            result.addRemoved(song);
+        }
+    }
+
+    private boolean isUnderUnreadable(String path) {
+        for (String prefix : unreadable) {
+            if (path.equals(prefix) || path.startsWith(prefix + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
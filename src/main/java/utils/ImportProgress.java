@@ -0,0 +1,57 @@
+package utils;
+
+/**
+ * Snapshot of a running import's counters, as reported by ImportJob.
+ */
+public class ImportProgress {
+
+    private final int filesScanned; // audio files found by the walker
+    private final int filesParsed; // files whose tags were read
+    private final int filesFailed; // files that could not be read
+    private final int songsCommitted; // new songs added to the library so far
+    private final long elapsedNanos; // running time, excluding time spent paused
+
+    ImportProgress(int filesScanned, int filesParsed, int filesFailed, int songsCommitted, long elapsedNanos) {
+        this.filesScanned = filesScanned;
+        this.filesParsed = filesParsed;
+        this.filesFailed = filesFailed;
+        this.songsCommitted = songsCommitted;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getFilesScanned() {
+        return filesScanned;
+    }
+
+    public int getFilesParsed() {
+        return filesParsed;
+    }
+
+    public int getFilesFailed() {
+        return filesFailed;
+    }
+
+    public int getSongsCommitted() {
+        return songsCommitted;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000L;
+    }
+
+    /*
+     * Files parsed or failed per second of (unpaused) running time
+     */
+    public double getFilesPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return (filesParsed + filesFailed) * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d scanned, %d parsed, %d failed (%.0f files/s)",
+                filesScanned, filesParsed, filesFailed, getFilesPerSecond());
+    }
+}
@@ -14,6 +14,10 @@ public class ImportResult {
 
     private final List<Song> successes = new ArrayList<>(); // successfully imported songs
     private final List<ImportFailure> failures = new ArrayList<>(); // failed imports with reasons
+    private final List<Song> removed = new ArrayList<>(); // songs whose files disappeared (rescan only)
+    private final List<File> duplicates = new ArrayList<>(); // files the library already holds (same path or tags)
+    private int unchanged; // files skipped because their fingerprint matched (rescan only)
+    private String error; // why the import stopped before the end, null if it completed
 
     public void addSuccess(Song s) {
         if (s != null) {
@@ -25,6 +29,20 @@ public class ImportResult {
         failures.add(new ImportFailure(f, reason));
     }
 
+    public void addRemoved(Song s) {
+        if (s != null) {
+            removed.add(s);
+        }
+    }
+
+    public void addDuplicate(File f) {
+        duplicates.add(f);
+    }
+
+    public void addUnchanged(int count) {
+        unchanged += count;
+    }
+
     public List<Song> getSuccesses() {
         return Collections.unmodifiableList(successes);
     }
@@ -41,6 +59,34 @@ public class ImportResult {
         return failures.size();
     }
 
+    public List<Song> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    public int removedCount() {
+        return removed.size();
+    }
+
+    public List<File> getDuplicates() {
+        return Collections.unmodifiableList(duplicates);
+    }
+
+    public int duplicateCount() {
+        return duplicates.size();
+    }
+
+    public int unchangedCount() {
+        return unchanged;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public String getError() {
+        return error;
+    }
+
     public static class ImportFailure {
 
         private final File file;
@@ -0,0 +1,501 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import models.MusicLibrary;
+import models.Playlist;
+import models.Song;
+
+/**
+ * Append-only journal of playlist and library edits.
+ * Edits are made through the journal, which applies each one and writes it as one JSON line
+ * to the active journal file under the library's write lock, instead of rewriting the whole
+ * snapshot. Once enough entries accumulate, the journal is compacted: the active
+ * file is rotated into a segment on the calling thread, and a background thread encodes the
+ * library, writes the snapshot and deletes the segments it now covers.
+ *
+ * On startup, recover replays every entry newer than the snapshot's journal sequence, so
+ * edits made since the last compaction survive a crash. A torn final line is ignored.
+ * Bulk imports are not journaled per song; callers compact right after them instead.
+ */
+public class LibraryJournal {
+
+    private static final String SNAPSHOT_FILE = "music-library.bin"; // Snapshot written by compaction
+    private static final String JOURNAL_FILE = "library.journal"; // Active journal file
+    private static final int COMPACT_THRESHOLD = 1000; // entries appended before compacting
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static LibraryJournal instance; // Singleton instance
+
+    private final MusicLibrary library; // library the journal describes
+    private final File snapshotFile;
+    private final File journalFile;
+    private final ExecutorService compactor; // single thread, so snapshots are written in order
+    private Writer writer; // open lazily on the first append after a rotation
+    private volatile long lastSeq = 0; // sequence of the last entry appended or replayed; written under this
+    private int pendingEntries = 0; // entries not yet folded into a snapshot
+
+    /*
+     * Kind of edit recorded by an entry
+     */
+    enum Op {
+        PLAYLIST_CREATE, PLAYLIST_DELETE, PLAYLIST_RENAME,
+        PLAYLIST_ADD, PLAYLIST_REMOVE, PLAYLIST_MOVE,
+        SONG_EDIT
+    }
+
+    /*
+     * Work done under the library's write lock that may fail to reach the disk
+     */
+    private interface JournalAction<T> {
+        T run() throws IOException;
+    }
+
+    /*
+     * A single journal line; unused fields are left null and omitted
+     */
+    @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static final class Entry {
+
+        private long seq;
+        private Op op;
+        private String playlist; // playlist name
+        private String name; // new playlist name, or new song title
+        private String description;
+        private String song; // song path
+        private Integer index;
+        private Integer toIndex;
+        private String artist;
+        private String album;
+        private String genre;
+        private Integer track;
+        private String path; // new song path
+
+        Entry() {
+        }
+
+        Entry(Op op) {
+            this.op = op;
+        }
+    }
+
+    /*
+     * Create a journal for the given library, snapshot file and active journal file
+     */
+    public LibraryJournal(MusicLibrary library, File snapshotFile, File journalFile) {
+        this.library = library;
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "LibraryJournal-Compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /*
+     * Get the journal for the shared MusicLibrary and default files
+     */
+    public static synchronized LibraryJournal getInstance() {
+        if (instance == null) {
+            instance = new LibraryJournal(MusicLibrary.getInstance(), new File(SNAPSHOT_FILE), new File(JOURNAL_FILE));
+        }
+        return instance;
+    }
+
+    /*
+     * Sequence of the last entry written, to be stored with a snapshot that includes it
+     */
+    public synchronized long getLastSequence() {
+        return lastSeq;
+    }
+
+    /*
+     * Replay entries newer than the snapshot's sequence into the library.
+     * Returns the number of entries applied; if any were, the journal is compacted.
+     */
+    public int recover(long snapshotSeq) throws IOException {
+        return underWriteLock(() -> replay(snapshotSeq));
+    }
+
+    private synchronized int replay(long snapshotSeq) throws IOException {
+        lastSeq = Math.max(lastSeq, snapshotSeq);
+        int applied = 0;
+        List<File> files = segments();
+        files.add(journalFile);
+        for (File file : files) {
+            if (!file.exists()) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Entry entry;
+                    try {
+                        entry = MAPPER.readValue(line, Entry.class);
+                    } catch (JsonProcessingException e) {
+                        // Torn write from a crash; nothing after it in this file is trustworthy
+                        break;
+                    }
+                    if (entry.seq <= snapshotSeq) {
+                        continue;
+                    }
+                    if (apply(entry)) {
+                        applied++;
+                    }
+                    lastSeq = Math.max(lastSeq, entry.seq);
+                }
+            }
+        }
+        pendingEntries = applied;
+        if (applied > 0) {
+            compact();
+        } else {
+            deleteSegments(snapshotSeq);
+        }
+        return applied;
+    }
+
+    /*
+     * Add a playlist to the library and record it
+     */
+    public void createPlaylist(Playlist playlist) throws IOException {
+        record(() -> {
+            library.addPlaylist(playlist);
+            Entry entry = new Entry(Op.PLAYLIST_CREATE);
+            entry.playlist = playlist.getName();
+            entry.description = playlist.getDescription();
+            return entry;
+        });
+    }
+
+    /*
+     * Remove a playlist from the library and record it
+     */
+    public void deletePlaylist(Playlist playlist) throws IOException {
+        record(() -> {
+            library.removePlaylist(playlist);
+            Entry entry = new Entry(Op.PLAYLIST_DELETE);
+            entry.playlist = playlist.getName();
+            return entry;
+        });
+    }
+
+    /*
+     * Rename a playlist and record it
+     */
+    public void renamePlaylist(Playlist playlist, String newName) throws IOException {
+        record(() -> {
+            Entry entry = new Entry(Op.PLAYLIST_RENAME);
+            entry.playlist = playlist.getName();
+            entry.name = newName;
+            playlist.setName(newName);
+            return entry;
+        });
+    }
+
+    /*
+     * Append a song to a playlist and record it
+     */
+    public void addSongToPlaylist(Playlist playlist, Song song) throws IOException {
+        record(() -> {
+            playlist.addSong(song);
+            Entry entry = new Entry(Op.PLAYLIST_ADD);
+            entry.playlist = playlist.getName();
+            entry.song = song.getFilePath();
+            return entry;
+        });
+    }
+
+    /*
+     * Remove a song from a playlist and record it
+     */
+    public void removeSongFromPlaylist(Playlist playlist, Song song) throws IOException {
+        record(() -> {
+            playlist.removeSong(song);
+            Entry entry = new Entry(Op.PLAYLIST_REMOVE);
+            entry.playlist = playlist.getName();
+            entry.song = song.getFilePath();
+            return entry;
+        });
+    }
+
+    /*
+     * Move a song within a playlist and record it
+     */
+    public void moveSongInPlaylist(Playlist playlist, int fromIndex, int toIndex) throws IOException {
+        record(() -> {
+            playlist.moveSong(fromIndex, toIndex);
+            Entry entry = new Entry(Op.PLAYLIST_MOVE);
+            entry.playlist = playlist.getName();
+            entry.index = fromIndex;
+            entry.toIndex = toIndex;
+            return entry;
+        });
+    }
+
+    /*
+     * Edit a song's metadata in the library and record the result
+     */
+    public void editSong(Song song, String title, String artist, String album, String genre,
+            Integer trackNumber, String filePath) throws IOException {
+        record(() -> {
+            Entry entry = new Entry(Op.SONG_EDIT);
+            entry.song = song.getFilePath();
+            library.editSong(song, title, artist, album, genre, trackNumber, filePath);
+            entry.name = song.getTitle();
+            entry.artist = song.getArtist() != null ? song.getArtist().getName() : null;
+            entry.album = song.getAlbum() != null ? song.getAlbum().getTitle() : null;
+            entry.genre = song.getGenre();
+            entry.track = song.getTrackNumber();
+            entry.path = song.getFilePath();
+            return entry;
+        });
+    }
+
+    /*
+     * Fold the journal into a fresh snapshot. Only the rotation of the active file happens on
+     * the calling thread; encoding the library, writing the snapshot and deleting the covered
+     * journal segments happen in the background.
+     */
+    public void compact() throws IOException {
+        startCompaction();
+    }
+
+    /*
+     * Compact and wait until the snapshot is on disk, e.g. before retiring another copy of its data
+     */
+    public void checkpoint() throws IOException {
+        Future<Void> written = startCompaction();
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the library snapshot");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private synchronized Future<Void> startCompaction() throws IOException {
+        closeWriter();
+        if (journalFile.exists()) {
+            File segment = new File(journalFile.getAbsoluteFile().getParentFile(), journalFile.getName() + "." + lastSeq);
+            Files.move(journalFile.toPath(), segment.toPath());
+        }
+        pendingEntries = 0;
+        return compactor.submit(() -> {
+            try {
+                // Edits are made together with their entry under the write lock, so the sequence
+                // read under the read lock matches the state encoded
+                long[] seq = new long[1];
+                byte[] snapshot = library.read(() -> {
+                    seq[0] = lastSeq;
+                    try {
+                        return BinaryLibraryIO.encode(library, seq[0]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                BinaryLibraryIO.write(snapshot, snapshotFile);
+                deleteSegments(seq[0]);
+                return null;
+            } catch (IOException | RuntimeException e) {
+                // Segments are kept, so the next startup replays them on top of the old snapshot
+                System.err.println("Error compacting library journal: " + e);
+                throw e;
+            }
+        });
+    }
+
+    /*
+     * Compact a final time and wait for the snapshot to reach disk
+     */
+    public synchronized void close() throws IOException {
+        compact();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Make an edit and append the entry describing it as one write to the library, so a
+     * compaction sees either both or neither
+     */
+    private void record(Supplier<Entry> edit) throws IOException {
+        underWriteLock(() -> {
+            append(edit.get());
+            return null;
+        });
+    }
+
+    /*
+     * Run a journal action under the library's write lock. The lock is always taken before
+     * this journal's monitor, never the other way around.
+     */
+    private <T> T underWriteLock(JournalAction<T> action) throws IOException {
+        List<T> result = new ArrayList<>(1);
+        try {
+            library.update(() -> {
+                try {
+                    result.add(action.run());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return result.get(0);
+    }
+
+    /*
+     * Write one entry and flush it, compacting once the threshold is reached
+     */
+    private synchronized void append(Entry entry) throws IOException {
+        entry.seq = ++lastSeq;
+        if (writer == null) {
+            writer = new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8);
+        }
+        writer.write(MAPPER.writeValueAsString(entry));
+        writer.write('\n');
+        writer.flush();
+        if (++pendingEntries >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /*
+     * Apply a replayed entry to the library; returns false if its target no longer exists
+     */
+    private boolean apply(Entry entry) {
+        if (entry.op == null) {
+            return false;
+        }
+        Playlist playlist = entry.playlist != null ? library.findPlaylist(entry.playlist) : null;
+        Song song = entry.song != null ? library.findSongByPath(entry.song) : null;
+        switch (entry.op) {
+            case PLAYLIST_CREATE:
+                if (playlist != null) {
+                    return false;
+                }
+                library.addPlaylist(new Playlist(entry.playlist, entry.description));
+                return true;
+            case PLAYLIST_DELETE:
+                if (playlist == null) {
+                    return false;
+                }
+                library.removePlaylist(playlist);
+                return true;
+            case PLAYLIST_RENAME:
+                if (playlist == null || entry.name == null) {
+                    return false;
+                }
+                playlist.setName(entry.name);
+                return true;
+            case PLAYLIST_ADD:
+                if (playlist == null || song == null) {
+                    return false;
+                }
+                playlist.addSong(song);
+                return true;
+            case PLAYLIST_REMOVE:
+                if (playlist == null || song == null) {
+                    return false;
+                }
+                playlist.removeSong(song);
+                return true;
+            case PLAYLIST_MOVE:
+                if (playlist == null || entry.index == null || entry.toIndex == null) {
+                    return false;
+                }
+                playlist.moveSong(entry.index, entry.toIndex);
+                return true;
+            case SONG_EDIT:
+                if (song == null) {
+                    return false;
+                }
+                library.editSong(song, entry.name, entry.artist, entry.album, entry.genre, entry.track, entry.path);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /*
+     * Rotated journal segments, oldest first
+     */
+    private List<File> segments() {
+        List<File> result = new ArrayList<>();
+        File dir = journalFile.getAbsoluteFile().getParentFile();
+        File[] files = dir != null ? dir.listFiles() : null;
+        if (files != null) {
+            for (File file : files) {
+                if (segmentSeq(file) >= 0) {
+                    result.add(file);
+                }
+            }
+        }
+        result.sort((a, b) -> Long.compare(segmentSeq(a), segmentSeq(b)));
+        return result;
+    }
+
+    /*
+     * Delete the segments whose entries are all included in a snapshot with the given sequence
+     */
+    private void deleteSegments(long seq) {
+        for (File segment : segments()) {
+            if (segmentSeq(segment) <= seq) {
+                segment.delete();
+            }
+        }
+    }
+
+    /*
+     * Last sequence number contained in a segment file, or -1 if the file is not a segment
+     */
+    private long segmentSeq(File file) {
+        String prefix = journalFile.getName() + ".";
+        String name = file.getName();
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * In-process registry of counters, gauges, histograms and timers, used to see where time goes
+ * during imports, searches, saves and playback.
+ *
+ * Recording is lock-free and cheap enough for hot paths: a counter is a LongAdder, and a
+ * histogram adds to one of a fixed set of log-linear buckets (8 per power of two), so
+ * percentiles are estimated within about 6% without keeping individual samples.
+ * Metrics live for the whole run and are never reset.
+ *
+ * The registry can be written as Prometheus text or JSON, on demand or periodically to a
+ * local file (see startDump).
+ */
+public class Metrics {
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 }; // percentiles exported per histogram
+    private static Metrics instance; // Singleton instance
+
+    private final Map<String, Metric> metrics = new TreeMap<>(); // guarded by this; sorted by name for stable output
+    private ScheduledExecutorService dumper; // guarded by this; null until startDump
+    private ScheduledFuture<?> dumpTask; // guarded by this
+    private File dumpFile; // guarded by this
+
+    Metrics() {
+    }
+
+    /*
+     * Get the singleton instance of the registry
+     */
+    public static synchronized Metrics getInstance() {
+        if (instance == null) {
+            instance = new Metrics();
+        }
+        return instance;
+    }
+
+    /*
+     * Get or create the counter with the given name
+     */
+    public Counter counter(String name, String help) {
+        return register(name, Counter.class, () -> new Counter(name, help));
+    }
+
+    /*
+     * Get or create the histogram with the given name, for unitless values such as byte counts
+     */
+    public Histogram histogram(String name, String help) {
+        return register(name, Histogram.class, () -> new Histogram(name, help));
+    }
+
+    /*
+     * Get or create the timer with the given name; durations are recorded in nanoseconds and
+     * exported in seconds
+     */
+    public Timer timer(String name, String help) {
+        return register(name, Timer.class, () -> new Timer(name, help));
+    }
+
+    /*
+     * Register a gauge reading its value from source whenever the metrics are exported,
+     * replacing an earlier gauge of the same name
+     */
+    public synchronized void gauge(String name, String help, DoubleSupplier source) {
+        Metric existing = metrics.get(name);
+        if (existing != null && !(existing instanceof Gauge)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as another type");
+        }
+        metrics.put(name, new Gauge(name, help, source));
+    }
+
+    private synchronized <M extends Metric> M register(String name, Class<M> type, Supplier<M> factory) {
+        Metric existing = metrics.get(name);
+        if (existing == null) {
+            M created = factory.get();
+            metrics.put(name, created);
+            return created;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as another type");
+        }
+        return type.cast(existing);
+    }
+
+    private synchronized List<Metric> snapshot() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    /*
+     * Export all metrics in the Prometheus text exposition format.
+     * Histograms and timers are written as summaries with p50, p90 and p99.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : snapshot()) {
+            out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            out.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+            if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                for (double q : QUANTILES) {
+                    out.append(metric.name).append("{quantile=\"").append(q).append("\"} ")
+                            .append(number(histogram.scale(histogram.percentile(q)))).append('\n');
+                }
+                out.append(metric.name).append("_sum ").append(number(histogram.scale(histogram.getSum()))).append('\n');
+                out.append(metric.name).append("_count ").append(histogram.getCount()).append('\n');
+            } else {
+                out.append(metric.name).append(' ').append(number(metric.value())).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    /*
+     * Export all metrics as a JSON object keyed by metric name
+     */
+    public String toJson() {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        for (Metric metric : snapshot()) {
+            if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                ObjectNode node = root.putObject(metric.name);
+                node.put("count", histogram.getCount());
+                node.put("sum", histogram.scale(histogram.getSum()));
+                node.put("max", histogram.scale(histogram.getMax()));
+                for (double q : QUANTILES) {
+                    node.put("p" + Math.round(q * 100), histogram.scale(histogram.percentile(q)));
+                }
+            } else {
+                root.put(metric.name, metric.value());
+            }
+        }
+        try {
+            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Write all metrics to the given file, replacing it atomically.
+     * Files ending in .json get JSON, anything else Prometheus text.
+     */
+    public void dump(File file) throws IOException {
+        String text = file.getName().toLowerCase(Locale.ROOT).endsWith(".json") ? toJson() : toPrometheus();
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+     * Dump the metrics to file every intervalMillis on a background thread, replacing any
+     * earlier periodic dump
+     */
+    public synchronized void startDump(File file, long intervalMillis) {
+        stopDumpTask();
+        if (dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Metrics-Dump");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        dumpFile = file;
+        dumpTask = dumper.scheduleWithFixedDelay(() -> dumpSafe(file), intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Stop the periodic dump, writing the file one last time
+     */
+    public synchronized void stopDump() {
+        File last = dumpFile;
+        stopDumpTask();
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+        if (last != null) {
+            dumpSafe(last);
+        }
+    }
+
+    private void stopDumpTask() {
+        if (dumpTask != null) {
+            dumpTask.cancel(false);
+            dumpTask = null;
+        }
+        dumpFile = null;
+    }
+
+    private void dumpSafe(File file) {
+        try {
+            dump(file);
+        } catch (IOException e) {
+            System.err.println("Error writing metrics: " + e.getMessage());
+        }
+    }
+
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Base class of all registered metrics
+     */
+    public abstract static class Metric {
+
+        private final String name; // exported name, e.g. library_search_seconds
+        private final String help; // one-line description
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        abstract String type();
+
+        abstract double value();
+    }
+
+    /**
+     * Monotonically increasing count of events
+     */
+    public static class Counter extends Metric {
+
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        double value() {
+            return getCount();
+        }
+    }
+
+    /**
+     * Current value of something, read when the metrics are exported
+     */
+    public static class Gauge extends Metric {
+
+        private final DoubleSupplier source;
+
+        Gauge(String name, String help, DoubleSupplier source) {
+            super(name, help);
+            this.source = source;
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+
+        @Override
+        double value() {
+            return source.getAsDouble();
+        }
+    }
+
+    /**
+     * Distribution of non-negative values with percentile estimates.
+     * Values below 8 get a bucket each; above that every power of two is split into 8 buckets,
+     * and a percentile is reported as the middle of the bucket it falls into.
+     */
+    public static class Histogram extends Metric {
+
+        private static final int SUB_BITS = 3; // 2^SUB_BITS buckets per power of two
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_COUNT; // up to Long.MAX_VALUE
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String help) {
+            super(name, help);
+        }
+
+        /*
+         * Record one value; negative values are counted as 0
+         */
+        public void record(long value) {
+            long v = Math.max(0, value);
+            buckets.incrementAndGet(bucketOf(v));
+            sum.add(v);
+            long current;
+            while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+                // retry until max is at least v
+            }
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /*
+         * Estimate the value below which the given fraction (0..1) of recorded values fall.
+         * Returns 0 if nothing was recorded.
+         */
+        public long percentile(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(1.0, Math.max(0.0, fraction)) * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long low = lowerBound(i);
+                    long width = i < SUB_COUNT ? 1 : 1L << (i / SUB_COUNT - 1);
+                    return Math.min(low + (width - 1) / 2, getMax());
+                }
+            }
+            return getMax();
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_COUNT) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_COUNT) {
+                return bucket;
+            }
+            int shift = bucket / SUB_COUNT - 1;
+            return (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        }
+
+        /*
+         * Convert a recorded value to the exported unit
+         */
+        double scale(long value) {
+            return value;
+        }
+
+        @Override
+        String type() {
+            return "summary";
+        }
+
+        @Override
+        double value() {
+            return getCount();
+        }
+    }
+
+    /**
+     * Histogram of durations, recorded in nanoseconds and exported in seconds
+     */
+    public static class Timer extends Histogram {
+
+        Timer(String name, String help) {
+            super(name, help);
+        }
+
+        /*
+         * Record the time elapsed since startNanos (a System.nanoTime() value)
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long amount, TimeUnit unit) {
+            record(unit.toNanos(amount));
+        }
+
+        @Override
+        double scale(long value) {
+            return value / 1e9;
+        }
+    }
+}
@@ -2,7 +2,10 @@ package utils;
 
 import java.io.File;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -27,15 +30,195 @@ public class MusicImporter {
     private static final String[] SUPPORTED_FORMATS = {
         "mp3", "wav", "flac", "m4a", "ogg"
     }; // Supported audio file extensions
+    private static final Metrics.Timer PARSE_TIME = Metrics.getInstance().timer("import_parse_seconds",
+            "Time to read the tags of one audio file"); // includes the fallback for unreadable tags
+    private static final Metrics.Counter TAG_FAILURES = Metrics.getInstance().counter("import_tag_failures_total",
+            "Files whose tags could not be read and were imported from the file name");
+    private static final Metrics.Counter PARSE_FAILURES = Metrics.getInstance().counter("import_parse_failures_total",
+            "Files that could not be imported at all");
 
     /**
-     * Import a single audio file
+     * Import a single audio file. Returns null if it is not an audio file or the library
+     * already holds it (or a song with the same tags).
      */
     public static Song importAudioFile(File file) {
         if (!isAudioFile(file)) {
             return null;
         }
 
+        MusicLibrary library = MusicLibrary.getInstance();
+        Song song = createSong(parseAudioFile(file), library);
+        if (!library.addSong(song)) {
+            return null; // already in the library
+        }
+        song.getAlbum().addSong(song);
+        return song;
+    }
+
+    /**
+     * Import multiple audio files and return a detailed ImportResult.
+     */
+    public static ImportResult importAudioFiles(File[] files) {
+        return importAudioFiles(files, getDefaultParallelism());
+    }
+
+    /**
+     * Import multiple audio files and directories, parsing tags on the given number of threads.
+     */
+    public static ImportResult importAudioFiles(File[] files, int parallelism) {
+        return new ImportPipeline(MusicLibrary.getInstance(), parallelism).run(Arrays.asList(files));
+    }
+
+    /**
+     * Backwards-compatible helper that returns only the successes as a list of songs.
+     */
+    public static List<Song> importAudioFilesList(File[] files) {
+        return importAudioFiles(files).getSuccesses();
+    }
+
+    /**
+     * Import all audio files from a directory and return a detailed ImportResult.
+     */
+    public static ImportResult importFromDirectoryResult(File directory) {
+        return importFromDirectoryResult(directory, getDefaultParallelism());
+    }
+
+    /**
+     * Import all audio files from a directory, parsing tags on the given number of threads.
+     */
+    public static ImportResult importFromDirectoryResult(File directory, int parallelism) {
+        if (!directory.isDirectory()) {
+            return new ImportResult();
+        }
+        return new ImportPipeline(MusicLibrary.getInstance(), parallelism).run(List.of(directory));
+    }
+
+    /**
+     * Backwards-compatible helper that returns only the successes as a list.
+     */
+    public static List<Song> importFromDirectoryList(File directory) {
+        return importFromDirectoryResult(directory).getSuccesses();
+    }
+
+    /**
+     * Incrementally rescan a directory that was imported before. Only files that are new, or
+     * whose size or modification time differ from the library's record, are parsed; changed
+     * songs are updated in place and songs whose files are gone are removed from the library.
+     */
+    public static ImportResult rescanDirectory(File directory) {
+        return rescanDirectory(directory, getDefaultParallelism());
+    }
+
+    /**
+     * Incrementally rescan a directory, parsing changed files on the given number of threads.
+     */
+    public static ImportResult rescanDirectory(File directory, int parallelism) {
+        if (!directory.isDirectory()) {
+            return new ImportResult();
+        }
+
+        MusicLibrary library = MusicLibrary.getInstance();
+        return new ImportPipeline(library, parallelism, knownSongs(library, directory), new ImportJob(null))
+                .run(List.of(directory));
+    }
+
+    /**
+     * Start importing files and directories on a background thread; the returned job reports
+     * progress and committed songs to the listener (which may be null) and can be paused or cancelled.
+     */
+    public static ImportJob startImport(File[] files, ImportJob.Listener listener) {
+        ImportJob job = new ImportJob(listener);
+        List<File> roots = Arrays.asList(files.clone());
+        job.start(() -> new ImportPipeline(MusicLibrary.getInstance(), getDefaultParallelism(), null, job).run(roots));
+        return job;
+    }
+
+    /**
+     * Start an incremental rescan of a directory on a background thread
+     */
+    public static ImportJob startRescan(File directory, ImportJob.Listener listener) {
+        ImportJob job = new ImportJob(listener);
+        job.start(() -> {
+            if (!directory.isDirectory()) {
+                return new ImportResult();
+            }
+            MusicLibrary library = MusicLibrary.getInstance();
+            return new ImportPipeline(library, getDefaultParallelism(), knownSongs(library, directory), job)
+                    .run(List.of(directory));
+        });
+        return job;
+    }
+
+    /**
+     * Songs the library already knows under a directory, by absolute path
+     */
+    private static Map<String, Song> knownSongs(MusicLibrary library, File directory) {
+        String prefix = directory.getAbsolutePath() + File.separator;
+        Map<String, Song> known = new HashMap<>();
+        for (Song song : library.getAllSongs()) {
+            String path = song.getFilePath();
+            if (path != null && path.startsWith(prefix)) {
+                known.put(path, song);
+            }
+        }
+        return known;
+    }
+
+    /**
+     * Number of tag-parsing threads used by bulk imports ("importThreads" setting, defaults to one per core)
+     */
+    public static int getDefaultParallelism() {
+        int threads = ConfigManager.getInstance().getInt("importThreads", Runtime.getRuntime().availableProcessors());
+        return Math.max(1, threads);
+    }
+
+    /**
+     * Tag metadata read from an audio file, not yet attached to the library.
+     * Produced by parseAudioFile, which is safe to call from worker threads.
+     */
+    static class ParsedTrack {
+
+        final File file;
+        final String title;
+        final String artistName;
+        final String albumName;
+        final String genre;
+        final int trackNumber;
+        final int durationSeconds;
+
+        ParsedTrack(File file, String title, String artistName, String albumName, String genre,
+                int trackNumber, int durationSeconds) {
+            this.file = file;
+            this.title = title;
+            this.artistName = artistName;
+            this.albumName = albumName;
+            this.genre = genre;
+            this.trackNumber = trackNumber;
+            this.durationSeconds = durationSeconds;
+        }
+    }
+
+    /**
+     * Read the tags of an audio file without touching the library.
+     * Files seen before (by content, see TagCache) are not parsed again.
+     */
+    static ParsedTrack parseAudioFile(File file) {
+        long start = System.nanoTime();
+        try {
+            TagCache cache = TagCache.getInstance();
+            TagCache.Fingerprint fingerprint = TagCache.fingerprint(file);
+            ParsedTrack track = cache.get(fingerprint, file);
+            if (track == null) {
+                track = readTrack(file);
+                cache.put(fingerprint, track);
+            }
+            return track;
+        } finally {
+            PARSE_TIME.recordSince(start);
+        }
+    }
+
+    private static ParsedTrack readTrack(File file) {
         try {
             // Read audio file metadata
             AudioFile audioFile = AudioFileIO.read(file);
@@ -52,112 +235,61 @@ public class MusicImporter {
             int trackNumber = parseTrackNumber(trackNumberStr);
             int durationSeconds = header.getTrackLength();
 
-            // Create or get artist
-            MusicLibrary library = MusicLibrary.getInstance();
-            Artist artist = findOrCreateArtist(artistName, library);
-
-            // Create or get album
-            Album album = findOrCreateAlbum(albumName, artist, library);
-
-            // Create song
-            Song song = new Song(title, artist, album, durationSeconds);
-            song.setGenre(genre);
-            song.setTrackNumber(trackNumber);
-            song.setAudioFile(file);
-
-            // Add to album
-            album.addSong(song);
-
-            // Add to library
-            library.addSong(song);
-
-            return song;
+            return new ParsedTrack(file, title, artistName, albumName, genre, trackNumber, durationSeconds);
 
         } catch (Exception e) {
-            // Attempt to create a basic fallback song; if that fails, bubble up as runtime exception
+            // Attempt to create a basic fallback track; if that fails, bubble up as runtime exception
+            TAG_FAILURES.increment();
             try {
-                Song fallback = createBasicSong(file);
-                if (fallback != null) {
-                    return fallback;
-                }
-                throw new RuntimeException("Failed to import and fallback creation returned null for " + file.getName());
+                return parseBasicTrack(file);
             } catch (Exception ex) {
+                PARSE_FAILURES.increment();
                 throw new RuntimeException("Error importing file " + file.getName() + ": " + e.getMessage(), ex);
             }
         }
     }
 
     /**
-     * Import multiple audio files and return a detailed ImportResult.
+     * Create a song for a parsed track, finding or creating its artist and album in the library.
+     * The song is added to its album but not to the library itself.
      */
-    public static ImportResult importAudioFiles(File[] files) {
-        ImportResult result = new ImportResult();
-
-        for (File file : files) {
-            if (file.isDirectory()) {
-                ImportResult sub = importFromDirectoryResult(file);
-                sub.getSuccesses().forEach(result::addSuccess);
-                sub.getFailures().forEach(f -> result.addFailure(f.getFile(), f.getReason()));
-            } else {
-                try {
-                    Song song = importAudioFile(file);
-                    if (song != null) {
-                        result.addSuccess(song);
-                    }
-                } catch (Exception e) {
-                    result.addFailure(file, e.getMessage());
-                }
-            }
-        }
+    static Song createSong(ParsedTrack track, MusicLibrary library) {
+        // Create or get artist
+        Artist artist = findOrCreateArtist(track.artistName, library);
 
-        return result;
-    }
+        // Create or get album
+        Album album = findOrCreateAlbum(track.albumName, artist, library);
 
-    /**
-     * Backwards-compatible helper that returns only the successes as a list of songs.
-     */
-    public static List<Song> importAudioFilesList(File[] files) {
-        return importAudioFiles(files).getSuccesses();
+        // Create song
+        Song song = new Song(track.title, artist, album, track.durationSeconds);
+        song.setGenre(track.genre);
+        song.setTrackNumber(track.trackNumber);
+        song.setAudioFile(track.file);
+
+        // Joins the album's song list only once the library accepts it
+        return song;
     }
 
     /**
-     * Import all audio files from a directory and return a detailed ImportResult.
+     * Apply a re-parsed track to a song already in the library, moving it to a
+     * different artist or album if its tags changed
      */
-    public static ImportResult importFromDirectoryResult(File directory) {
-        ImportResult result = new ImportResult();
-
-        if (!directory.isDirectory()) {
-            return result;
+    static void updateSong(Song song, ParsedTrack track, MusicLibrary library) {
+        Artist artist = findOrCreateArtist(track.artistName, library);
+        Album album = findOrCreateAlbum(track.albumName, artist, library);
+        if (song.getAlbum() != null && song.getAlbum() != album) {
+            song.getAlbum().removeSong(song);
         }
 
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    ImportResult sub = importFromDirectoryResult(file);
-                    sub.getSuccesses().forEach(result::addSuccess);
-                    sub.getFailures().forEach(f -> result.addFailure(f.getFile(), f.getReason()));
-                } else if (isAudioFile(file)) {
-                    try {
-                        Song song = importAudioFile(file);
-                        if (song != null) {
-                            result.addSuccess(song);
-                        }
-                    } catch (Exception e) {
-                        result.addFailure(file, e.getMessage());
-                    }
-                }
-            }
-        }
+        song.setTitle(track.title);
+        song.setArtist(artist);
+        song.setDurationSeconds(track.durationSeconds);
+        song.setGenre(track.genre);
+        song.setTrackNumber(track.trackNumber);
+        song.setAudioFile(track.file);
+        album.addSong(song);
 
-        return result;
-    }
-
-    /**
-     * Backwards-compatible helper that returns only the successes as a list.
-     */
-    public static List<Song> importFromDirectoryList(File directory) {
-        return importFromDirectoryResult(directory).getSuccesses();
+        library.reindexSong(song);
     }
 
     /**
@@ -168,7 +300,14 @@ public class MusicImporter {
             return false;
         }
 
-        String fileName = file.getName().toLowerCase();
+        return isAudioFileName(file.getName());
+    }
+
+    /**
+     * Check if a file name has a supported audio extension
+     */
+    static boolean isAudioFileName(String name) {
+        String fileName = name.toLowerCase();
         for (String format : SUPPORTED_FORMATS) {
             if (fileName.endsWith("." + format)) {
                 return true;
@@ -194,26 +333,14 @@ public class MusicImporter {
     }
 
     /**
-     * Create a basic song when metadata extraction fails
+     * Create a basic track when metadata extraction fails
      */
-    private static Song createBasicSong(File file) {
+    private static ParsedTrack parseBasicTrack(File file) {
         try {
             String fileName = file.getName();
             String title = fileName.substring(0, fileName.lastIndexOf('.'));
-
-            MusicLibrary library = MusicLibrary.getInstance();
-            Artist artist = findOrCreateArtist("Unknown Artist", library);
-            Album album = findOrCreateAlbum("Unknown Album", artist, library);
-
             int duration = getAudioDuration(file);
-
-            Song song = new Song(title, artist, album, duration);
-            song.setAudioFile(file);
-
-            album.addSong(song);
-            library.addSong(song);
-
-            return song;
+            return new ParsedTrack(file, title, "Unknown Artist", "Unknown Album", "", 0, duration);
         } catch (Exception e) {
             throw new RuntimeException("Failed to create basic song for " + file.getName(), e);
         }
@@ -223,10 +350,9 @@ public class MusicImporter {
      * Find existing artist or create new one
      */
     private static Artist findOrCreateArtist(String artistName, MusicLibrary library) {
-        for (Artist existingArtist : library.getAllArtists()) {
-            if (existingArtist.getName().equals(artistName)) {
-                return existingArtist;
-            }
+        Artist existingArtist = library.findArtist(artistName);
+        if (existingArtist != null) {
+            return existingArtist;
         }
 
         Artist newArtist = new Artist(artistName);
@@ -238,11 +364,9 @@ public class MusicImporter {
      * Find existing album or create new one
      */
     private static Album findOrCreateAlbum(String albumName, Artist artist, MusicLibrary library) {
-        for (Album existingAlbum : library.getAllAlbums()) {
-            if (existingAlbum.getTitle().equals(albumName)
-                    && existingAlbum.getArtist().equals(artist)) {
-                return existingAlbum;
-            }
+        Album existingAlbum = library.findAlbum(albumName, artist);
+        if (existingAlbum != null) {
+            return existingAlbum;
         }
 
         Album newAlbum = new Album(albumName, artist, LocalDate.now(), "");
@@ -2,8 +2,14 @@ package utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -15,14 +21,25 @@ import models.Playlist;
 import models.Song;
 
 /**
- * Persistence helper for the MusicLibrary. Saves/loads a simple snapshot object to JSON.
+ * Persistence helper for the MusicLibrary. The library is stored as a compact binary snapshot
+ * (see BinaryLibraryIO); the JSON snapshot format is kept for export and for migrating
+ * libraries saved by older versions.
  */
 public class MusicLibraryIO {
 
-    private static final String LIBRARY_FILE = "music-library.json"; // Default file path
+    private static final String LIBRARY_FILE = "music-library.json"; // Legacy JSON snapshot / export path
+    private static final String BINARY_LIBRARY_FILE = "music-library.bin"; // Default file path
     private static final ObjectMapper mapper = new ObjectMapper()
             .registerModule(new JavaTimeModule())
             .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS); // For better date handling
+    private static final Metrics.Timer EXPORT_TIME = Metrics.getInstance().timer("library_json_save_seconds",
+            "Time to export the library as JSON");
+    private static final Metrics.Histogram EXPORT_BYTES = Metrics.getInstance().histogram("library_json_save_bytes",
+            "Size of exported JSON libraries");
+    private static final Metrics.Timer IMPORT_TIME = Metrics.getInstance().timer("library_json_load_seconds",
+            "Time to load a JSON library snapshot");
+    private static final Metrics.Histogram IMPORT_BYTES = Metrics.getInstance().histogram("library_json_load_bytes",
+            "Size of loaded JSON library snapshots");
 
     /*
      * Snapshot class used for serialization/deserialization of the entire library
@@ -78,46 +95,143 @@ public class MusicLibraryIO {
     }
 
     /*
-     * Save library snapshot to file
+     * Save library snapshot to the default binary file, marking every journal entry so far as included
      */
     public static void saveLibrary(MusicLibrary lib) throws IOException {
-        saveLibrary(lib, new File(LIBRARY_FILE));
+        BinaryLibraryIO.save(lib, new File(BINARY_LIBRARY_FILE), LibraryJournal.getInstance().getLastSequence());
     }
 
     /*
-    * Save library snapshot to file
-    */
+     * Save (export) library snapshot to a JSON file
+     */
     public static void saveLibrary(MusicLibrary lib, File outFile) throws IOException {
-        Snapshot snap = new Snapshot(lib.getAllSongs(), lib.getAllArtists(), lib.getAllAlbums(), lib.getAllPlaylists());
+        long start = System.nanoTime();
+        Snapshot snap = lib.read(() ->
+                new Snapshot(lib.getAllSongs(), lib.getAllArtists(), lib.getAllAlbums(), lib.getAllPlaylists()));
         mapper.writerWithDefaultPrettyPrinter().writeValue(outFile, snap);
+        EXPORT_TIME.recordSince(start);
+        EXPORT_BYTES.record(outFile.length());
     }
 
     /*
-     * Load library snapshot from file, replacing current library content
+     * Load library snapshot from the default binary file, replacing current library content.
+     * If only a JSON snapshot from an older version exists, it is loaded and migrated once.
+     * Returns the last LibraryJournal sequence included in the snapshot.
      */
-    public static void loadLibrary(MusicLibrary lib) throws IOException {
-        loadLibrary(lib, new File(LIBRARY_FILE));
+    public static long loadLibrary(MusicLibrary lib) throws IOException {
+        File binaryFile = new File(BINARY_LIBRARY_FILE);
+        if (binaryFile.exists()) {
+            return BinaryLibraryIO.load(lib, binaryFile);
+        }
+        File jsonFile = new File(LIBRARY_FILE);
+        if (jsonFile.exists()) {
+            loadLibrary(lib, jsonFile);
+            // The JSON file is left in place as a backup; later loads use the binary snapshot
+            BinaryLibraryIO.save(lib, binaryFile);
+        }
+        return 0;
     }
 
     /*
-     * Load library snapshot from file, replacing current library content
+     * Load library snapshot from a JSON file, replacing current library content.
+     * The file is read token by token and each song is handed to the library as soon as it
+     * is parsed, so the whole Snapshot is never materialized. Artists and albums repeated
+     * inside every song are interned to a single instance each.
      */
     public static void loadLibrary(MusicLibrary lib, File inFile) throws IOException {
         if (!inFile.exists()) {
             return;
         }
-        Snapshot snap = mapper.readValue(inFile, Snapshot.class);
-        // Replace current library content with the snapshot
-        lib.clearLibrary();
-        if (snap.getSongs() != null) {
-            for (Song s : snap.getSongs()) {
-                lib.addSong(s);
-            }
+        long start = System.nanoTime();
+        // Replace current library content in one write, so readers never see a half-loaded library
+        try {
+            lib.update(() -> {
+                try (JsonParser parser = mapper.getFactory().createParser(inFile)) {
+                    if (parser.nextToken() != JsonToken.START_OBJECT) {
+                        throw new JsonParseException(parser, "Expected a library snapshot object");
+                    }
+                    lib.clearLibrary();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.getCurrentName();
+                        JsonToken value = parser.nextToken();
+                        if ("songs".equals(field) && value == JsonToken.START_ARRAY) {
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                Song s = mapper.readValue(parser, Song.class);
+                                if (s != null) {
+                                    lib.addSong(internSong(lib, s));
+                                }
+                            }
+                        } else if ("playlists".equals(field) && value == JsonToken.START_ARRAY) {
+                            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                                Playlist p = mapper.readValue(parser, Playlist.class);
+                                if (p != null) {
+                                    lib.addPlaylist(internPlaylist(lib, p));
+                                }
+                            }
+                        } else {
+                            // The artists and albums lists are rebuilt from the songs
+                            parser.skipChildren();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        if (snap.getPlaylists() != null) {
-            for (Playlist p : snap.getPlaylists()) {
-                lib.addPlaylist(p);
+        IMPORT_TIME.recordSince(start);
+        IMPORT_BYTES.record(inFile.length());
+    }
+
+    /*
+     * Point a freshly parsed song at the library's existing artist and album instances
+     */
+    private static Song internSong(MusicLibrary lib, Song song) {
+        song.setArtist(internArtist(lib, song.getArtist()));
+        Album album = song.getAlbum();
+        if (album != null) {
+            Artist albumArtist = internArtist(lib, album.getArtist());
+            Album existing = lib.findAlbum(album.getTitle(), albumArtist);
+            if (existing != null) {
+                album = existing;
+            } else {
+                album.setArtist(albumArtist);
+                lib.addAlbum(album);
+                if (albumArtist != null) {
+                    albumArtist.addAlbum(album);
+                }
             }
+            album.addSong(song);
+        }
+        return song;
+    }
+
+    private static Artist internArtist(MusicLibrary lib, Artist artist) {
+        if (artist == null) {
+            return null;
+        }
+        Artist existing = lib.findArtist(artist.getName());
+        if (existing != null) {
+            return existing;
+        }
+        lib.addArtist(artist);
+        return artist;
+    }
+
+    /*
+     * Replace the embedded song copies of a parsed playlist with the library's songs
+     */
+    private static Playlist internPlaylist(MusicLibrary lib, Playlist playlist) {
+        List<Song> songs = new ArrayList<>(playlist.getSongCount());
+        for (Song s : playlist.getSongs()) {
+            Song existing = lib.findSongByPath(s.getFilePath());
+            songs.add(existing != null ? existing : s);
         }
+        LocalDateTime lastModified = playlist.getLastModified();
+        playlist.clearPlaylist();
+        playlist.addAll(songs);
+        playlist.setLastModified(lastModified);
+        return playlist;
     }
-}
\ No newline at end of file
+}
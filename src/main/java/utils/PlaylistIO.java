@@ -4,42 +4,149 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import models.MusicLibrary;
 import models.Playlist;
+import models.Song;
 
 /**
- * Simple JSON-backed persistence for playlists. Store playlists in a JSON file within the user's home directory.
+ * Simple JSON-backed persistence for playlists. The library snapshot and journal are where
+ * playlists live; the JSON file is written by older versions, and migrated into the library
+ * once by migratePlaylists().
+ *
+ * A playlist's songs are written as their MusicLibrary ids and resolved back to the library's
+ * own Song objects on load, so a song in many playlists is stored once (in the library) and
+ * loaded playlists share its instance. A song that is not in the library is written in full,
+ * as are all songs in files from older versions; those are matched to the library by path.
  */
 public class PlaylistIO {
 
     private static final ObjectMapper MAPPER = createMapper(); // Jackson ObjectMapper with JavaTimeModule registered
     // Persist playlists alongside the project file `music-library.json` in the working directory
     private static final String PLAYLIST_FILE = "playlists.json";
+    private static final Metrics.Timer SAVE_TIME = Metrics.getInstance().timer("playlists_save_seconds",
+            "Time to save the playlists file");
+    private static final Metrics.Histogram SAVE_BYTES = Metrics.getInstance().histogram("playlists_save_bytes",
+            "Size of saved playlists files");
+    private static final Metrics.Timer LOAD_TIME = Metrics.getInstance().timer("playlists_load_seconds",
+            "Time to load the playlists file");
+    private static final Metrics.Histogram LOAD_BYTES = Metrics.getInstance().histogram("playlists_load_bytes",
+            "Size of loaded playlists files");
 
     /*
-     * Load playlists from the JSON file, returning an empty list if the file doesn't exist or is unreadable
+     * Load playlists from the JSON file, resolving their songs against the shared library
      */
     public static List<Playlist> loadPlaylists() throws IOException {
+        return loadPlaylists(MusicLibrary.getInstance());
+    }
+
+    /*
+     * Load playlists from the JSON file, returning an empty list if the file doesn't exist.
+     * Song ids missing from the library are dropped.
+     */
+    public static List<Playlist> loadPlaylists(MusicLibrary lib) throws IOException {
         File file = new File(PLAYLIST_FILE);
         if (!file.exists()) {
             return new ArrayList<>();
         }
-        return MAPPER.readValue(file, new TypeReference<List<Playlist>>() {
-        });
+        long start = System.nanoTime();
+        List<Playlist> playlists = new ArrayList<>();
+        for (JsonNode node : MAPPER.readTree(file)) {
+            JsonNode songNodes = ((ObjectNode) node).remove("songs");
+            Playlist playlist = MAPPER.treeToValue(node, Playlist.class);
+            List<Song> songs = new ArrayList<>();
+            if (songNodes != null) {
+                for (JsonNode songNode : songNodes) {
+                    Song song = resolve(lib, songNode);
+                    if (song != null) {
+                        songs.add(song);
+                    }
+                }
+            }
+            playlist.addAll(songs);
+            // Setters such as setName touch lastModified while the playlist is read; restore it
+            JsonNode lastModified = node.get("lastModified");
+            if (lastModified != null && !lastModified.isNull()) {
+                playlist.setLastModified(MAPPER.treeToValue(lastModified, LocalDateTime.class));
+            }
+            playlists.add(playlist);
+        }
+        LOAD_TIME.recordSince(start);
+        LOAD_BYTES.record(file.length());
+        return playlists;
+    }
+
+    /*
+     * Move playlists saved by older versions into the library, which stores them in its
+     * snapshot and journal from then on. The file is renamed rather than deleted, and only once
+     * a snapshot holding its playlists has been written. Returns false if there was no file.
+     */
+    public static boolean migratePlaylists(MusicLibrary lib, LibraryJournal journal) throws IOException {
+        File file = new File(PLAYLIST_FILE);
+        if (!file.exists()) {
+            return false;
+        }
+        // Playlists already in the snapshot are newer than the file and are kept
+        for (Playlist playlist : loadPlaylists(lib)) {
+            lib.addPlaylist(playlist);
+        }
+        journal.checkpoint();
+        Files.move(file.toPath(), new File(PLAYLIST_FILE + ".migrated").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
     }
 
     /*
-     * Save the given list of playlists to the JSON file, creating directories as needed
+     * Save the given list of playlists to the JSON file, referring to songs of the shared library by id
      */
     public static void savePlaylists(List<Playlist> playlists) throws IOException {
+        savePlaylists(playlists, MusicLibrary.getInstance());
+    }
+
+    public static void savePlaylists(List<Playlist> playlists, MusicLibrary lib) throws IOException {
         File file = new File(PLAYLIST_FILE);
-        MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, playlists);
+        long start = System.nanoTime();
+        ArrayNode root = MAPPER.createArrayNode();
+        for (Playlist playlist : playlists) {
+            ObjectNode node = MAPPER.valueToTree(playlist);
+            ArrayNode songs = node.putArray("songs");
+            for (Song song : playlist.getSongs()) {
+                if (song.getId() > 0 && lib.findSongById(song.getId()) == song) {
+                    songs.add(song.getId());
+                } else {
+                    songs.add(MAPPER.valueToTree(song));
+                }
+            }
+            root.add(node);
+        }
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, root);
+        SAVE_TIME.recordSince(start);
+        SAVE_BYTES.record(file.length());
+    }
+
+    /*
+     * The library song a stored playlist entry refers to: an id, or an embedded song matched by path
+     */
+    private static Song resolve(MusicLibrary lib, JsonNode songNode) throws IOException {
+        if (songNode.isInt()) {
+            return lib.findSongById(songNode.intValue());
+        }
+        Song song = MAPPER.treeToValue(songNode, Song.class);
+        if (song == null) {
+            return null;
+        }
+        Song existing = lib.findSongByPath(song.getFilePath());
+        return existing != null ? existing : song;
     }
 
     /*
@@ -49,6 +156,17 @@ public class PlaylistIO {
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
         mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // Songs are written separately, by id
+        mapper.addMixIn(Playlist.class, PlaylistWithoutSongs.class);
         return mapper;
     }
+
+    /**
+     * Mix-in leaving the songs out of a playlist's JSON properties
+     */
+    private abstract static class PlaylistWithoutSongs {
+
+        @JsonIgnore
+        abstract List<Song> getSongs();
+    }
 }
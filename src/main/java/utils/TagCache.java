@@ -0,0 +1,317 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk cache of parsed tags, keyed by a fingerprint of the file's content rather than its
+ * path: size, modification time and a checksum of the first HEAD_BYTES and last TAIL_BYTES
+ * bytes (where ID3v2 and ID3v1/APE tags live). A file that was moved, renamed or seen through
+ * another mount point keeps its fingerprint, so re-importing it skips jaudiotagger and only
+ * reads the ends of the file.
+ *
+ * Lookups and additions are safe from the import's parser threads. The cache is loaded on
+ * first use and written back by save(), which ImportPipeline calls after every run that
+ * added entries. Entries not used since the cache was loaded are dropped first once it holds
+ * more than the "tagCacheMaxEntries" setting.
+ */
+class TagCache {
+
+    private static final String CACHE_FILE = "tag-cache.bin"; // Default file path
+    private static final int MAGIC = 0x4F545443; // "OTTC"
+    private static final int VERSION = 1;
+    private static final int HEAD_BYTES = 64 * 1024; // bytes at the start of the file covered by the checksum
+    private static final int TAIL_BYTES = 4 * 1024; // bytes at the end of the file covered by the checksum
+    private static final byte TITLE_TAG = 0; // title came from the tags
+    private static final byte TITLE_FILE_NAME = 1; // title is the file name (no title tag)
+    private static final byte TITLE_BASE_NAME = 2; // title is the file name without extension (unreadable tags)
+    private static final Metrics.Counter HITS = Metrics.getInstance().counter("import_tag_cache_hits_total",
+            "Files whose tags were taken from the tag cache");
+    private static final Metrics.Counter MISSES = Metrics.getInstance().counter("import_tag_cache_misses_total",
+            "Files whose tags had to be parsed");
+    private static TagCache instance; // Singleton instance
+
+    private final File file;
+    private final int maxEntries;
+    private final Map<Fingerprint, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty; // entries were added since the last load or save
+
+    TagCache(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        load();
+    }
+
+    /*
+     * Get the singleton cache, loading it from the default file on first use
+     */
+    static synchronized TagCache getInstance() {
+        if (instance == null) {
+            instance = new TagCache(new File(CACHE_FILE),
+                    ConfigManager.getInstance().getInt("tagCacheMaxEntries", 200_000));
+            Metrics.getInstance().gauge("import_tag_cache_entries", "Files in the tag cache", instance::size);
+        }
+        return instance;
+    }
+
+    /*
+     * Fingerprint of the file's current content, or null if it cannot be read
+     */
+    static Fingerprint fingerprint(File file) {
+        long size = file.length();
+        long modified = file.lastModified();
+        if (size == 0 && modified == 0) {
+            return null; // missing or unreadable
+        }
+        CRC32C crc = new CRC32C();
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] buffer = new byte[(int) Math.min(HEAD_BYTES, size)];
+            in.readFully(buffer);
+            crc.update(buffer);
+            if (size > HEAD_BYTES) {
+                buffer = new byte[(int) Math.min(TAIL_BYTES, size - HEAD_BYTES)];
+                in.seek(size - buffer.length);
+                in.readFully(buffer);
+                crc.update(buffer);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return new Fingerprint(size, modified, crc.getValue());
+    }
+
+    /*
+     * Cached tags of a file with the given fingerprint, as read from this file, or null if not cached
+     */
+    MusicImporter.ParsedTrack get(Fingerprint key, File current) {
+        Entry entry = key != null ? entries.get(key) : null;
+        if (entry == null) {
+            MISSES.increment();
+            return null;
+        }
+        HITS.increment();
+        entry.used = true;
+        String title;
+        if (entry.titleSource == TITLE_FILE_NAME) {
+            title = current.getName();
+        } else if (entry.titleSource == TITLE_BASE_NAME) {
+            title = baseName(current);
+        } else {
+            title = entry.title;
+        }
+        return new MusicImporter.ParsedTrack(current, title, entry.artistName, entry.albumName, entry.genre,
+                entry.trackNumber, entry.durationSeconds);
+    }
+
+    /*
+     * Remember the tags parsed from a file with the given fingerprint
+     */
+    void put(Fingerprint key, MusicImporter.ParsedTrack track) {
+        if (key == null) {
+            return;
+        }
+        byte titleSource = TITLE_TAG;
+        if (track.title.equals(track.file.getName())) {
+            titleSource = TITLE_FILE_NAME;
+        } else if (track.title.equals(baseName(track.file))) {
+            titleSource = TITLE_BASE_NAME;
+        }
+        Entry entry = new Entry(titleSource == TITLE_TAG ? track.title : null, titleSource, track.artistName,
+                track.albumName, track.genre, track.trackNumber, track.durationSeconds);
+        entry.used = true;
+        entries.put(key, entry);
+        dirty = true;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /*
+     * Write the cache to its file if entries were added, replacing it atomically
+     */
+    synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            write(selectForSave());
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        }
+    }
+
+    /*
+     * Entries to write: those used since the cache was loaded, then older ones up to maxEntries
+     */
+    private List<Map.Entry<Fingerprint, Entry>> selectForSave() {
+        List<Map.Entry<Fingerprint, Entry>> kept = new ArrayList<>(entries.size());
+        for (Map.Entry<Fingerprint, Entry> e : entries.entrySet()) {
+            if (e.getValue().used) {
+                kept.add(e);
+            }
+        }
+        if (kept.size() < maxEntries) {
+            for (Map.Entry<Fingerprint, Entry> e : entries.entrySet()) {
+                if (!e.getValue().used && kept.size() < maxEntries) {
+                    kept.add(e);
+                }
+            }
+        } else if (kept.size() > maxEntries) {
+            kept = kept.subList(0, maxEntries);
+        }
+        return kept;
+    }
+
+    private void write(List<Map.Entry<Fingerprint, Entry>> kept) throws IOException {
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(kept.size());
+            for (Map.Entry<Fingerprint, Entry> e : kept) {
+                Fingerprint key = e.getKey();
+                Entry entry = e.getValue();
+                out.writeLong(key.size);
+                out.writeLong(key.modified);
+                out.writeLong(key.headChecksum);
+                out.writeByte(entry.titleSource);
+                writeString(out, entry.title);
+                writeString(out, entry.artistName);
+                writeString(out, entry.albumName);
+                writeString(out, entry.genre);
+                out.writeInt(entry.trackNumber);
+                out.writeInt(entry.durationSeconds);
+            }
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+     * Load the cache file if there is one; an unreadable file leaves the cache empty
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return; // written by another version; rebuilt as files are imported
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Fingerprint key = new Fingerprint(in.readLong(), in.readLong(), in.readLong());
+                byte titleSource = in.readByte();
+                String title = readString(in);
+                entries.put(key, new Entry(title, titleSource, readString(in), readString(in), readString(in),
+                        in.readInt(), in.readInt()));
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading tag cache: " + e.getMessage());
+        }
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(0, dot) : name;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Identity of a file's content: size, modification time and checksum of its head
+     */
+    static final class Fingerprint {
+
+        private final long size;
+        private final long modified;
+        private final long headChecksum;
+
+        Fingerprint(long size, long modified, long headChecksum) {
+            this.size = size;
+            this.modified = modified;
+            this.headChecksum = headChecksum;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint other = (Fingerprint) obj;
+            return size == other.size && modified == other.modified && headChecksum == other.headChecksum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size * 31 + modified) * 31 + Long.hashCode(headChecksum);
+        }
+    }
+
+    /**
+     * Parsed tags of one cached file
+     */
+    private static final class Entry {
+
+        private final String title; // null unless titleSource is TITLE_TAG
+        private final byte titleSource;
+        private final String artistName;
+        private final String albumName;
+        private final String genre;
+        private final int trackNumber;
+        private final int durationSeconds;
+        private volatile boolean used; // looked up or added since the cache was loaded
+
+        Entry(String title, byte titleSource, String artistName, String albumName, String genre,
+                int trackNumber, int durationSeconds) {
+            this.title = title;
+            this.titleSource = titleSource;
+            this.artistName = artistName;
+            this.albumName = albumName;
+            this.genre = genre;
+            this.trackNumber = trackNumber;
+            this.durationSeconds = durationSeconds;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package views;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import models.MusicLibrary;
+import models.Song;
+
+/**
+ * Runs song searches off the JavaFX thread for the search field.
+ * Each query waits for a short debounce delay so a burst of keystrokes triggers one search;
+ * a newer query cancels the pending or running one (searches stop early when interrupted).
+ * Results arrive in two steps: the first page as soon as it is found, then the rest up to the
+ * result limit. Only results of the latest query are delivered, on the FX thread.
+ */
+class AsyncSongSearch {
+
+    private static final int FIRST_PAGE = 100; // results delivered before the full result set
+
+    private final MusicLibrary library;
+    private final long debounceMillis; // delay between the last keystroke and the search
+    private final int limit; // max results per query
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SongSearch");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> pending; // FX thread only: scheduled or running search
+    private volatile long generation; // incremented per query; stale results are dropped
+
+    AsyncSongSearch(MusicLibrary library, long debounceMillis, int limit) {
+        this.library = library;
+        this.debounceMillis = debounceMillis;
+        this.limit = Math.max(1, limit);
+    }
+
+    /*
+     * Search for query after the debounce delay, cancelling any earlier query.
+     * onResults is called on the FX thread, once per delivered page.
+     */
+    void submit(String query, Consumer<List<Song>> onResults) {
+        long current = cancel();
+        pending = executor.schedule(() -> run(query, current, onResults), debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Cancel the pending or running query; its results will not be delivered.
+     * Returns the generation of the next query.
+     */
+    long cancel() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+        return ++generation;
+    }
+
+    void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void run(String query, long current, Consumer<List<Song>> onResults) {
+        List<Song> firstPage = library.searchSongs(query, Math.min(FIRST_PAGE, limit));
+        if (!deliver(firstPage, current, onResults) || firstPage.size() < Math.min(FIRST_PAGE, limit)) {
+            return;
+        }
+        deliver(library.searchSongs(query, limit), current, onResults);
+    }
+
+    /*
+     * Hand results to the FX thread unless a newer query superseded them
+     */
+    private boolean deliver(List<Song> results, long current, Consumer<List<Song>> onResults) {
+        if (Thread.currentThread().isInterrupted() || generation != current) {
+            return false;
+        }
+        Platform.runLater(() -> {
+            if (generation == current) {
+                onResults.accept(results);
+            }
+        });
+        return true;
+    }
+}
@@ -0,0 +1,75 @@
+package views;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Random permutation of the indexes of a list, generated one index at a time with a
+ * Fisher-Yates shuffle whose array is kept sparse: only positions that no longer hold their
+ * own index are stored. Starting a shuffle costs nothing whatever the size of the list and
+ * drawing k indexes takes O(k) time and memory.
+ *
+ * The list size is passed to every draw. Indexes added by growing the list join the ones not
+ * drawn yet. Shrinking the list does not shrink the permutation: draws still cover every
+ * position up to the largest size seen, and indexes beyond the current size are skipped, so
+ * every remaining index below it is still drawn exactly once.
+ */
+final class LazyShuffle {
+
+    private final Random random;
+    private final Map<Integer, Integer> moved = new HashMap<>(); // undrawn position -> index it holds, if not its own
+    private int drawn; // positions [0, drawn) have been handed out
+    private int limit; // largest size seen; positions [drawn, limit) are still to be drawn
+    private int peeked = -1; // index drawn by peek() and not yet returned by next()
+
+    /*
+     * Shuffle that never returns first (the index already playing), or any index if first is -1
+     */
+    LazyShuffle(Random random, int first) {
+        this.random = random;
+        if (first > 0) {
+            moved.put(first, 0);
+        }
+        drawn = first >= 0 ? 1 : 0;
+    }
+
+    /*
+     * Draw the next index below size, or -1 once every index has been drawn
+     */
+    int next(int size) {
+        int index = peek(size);
+        peeked = -1;
+        return index;
+    }
+
+    /*
+     * The index next(size) will return
+     */
+    int peek(int size) {
+        if (peeked >= 0 && peeked < size) {
+            return peeked;
+        }
+        peeked = -1;
+        limit = Math.max(limit, size);
+        while (drawn < limit) {
+            int position = drawn + random.nextInt(limit - drawn);
+            int index = indexAt(position);
+            if (position != drawn) {
+                moved.put(position, indexAt(drawn));
+            }
+            moved.remove(drawn);
+            drawn++;
+            if (index < size) {
+                peeked = index;
+                break;
+            }
+        }
+        return peeked;
+    }
+
+    private int indexAt(int position) {
+        Integer index = moved.get(position);
+        return index != null ? index : position;
+    }
+}
@@ -0,0 +1,156 @@
+package views;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings a list (typically a ListView's ObservableList) in line with a new content using as
+ * few structural changes as possible, instead of clearing and refilling it.
+ *
+ * Items are matched by identity. The common prefix and suffix are left alone; in between, the
+ * longest run of items that keep their relative order stays in place, the other old items
+ * are removed and the new ones inserted, each contiguous run with a single call. A moved item
+ * is one removal and one insertion. The lists are compared in O(n log n), but the target sees
+ * changes proportional to the difference, so cells, selection and scroll position of
+ * unchanged items survive.
+ */
+final class ListDiff {
+
+    /*
+     * Update target to contain the items of source, in order.
+     * Returns the number of items removed plus inserted.
+     */
+    static <T> int apply(List<T> target, List<? extends T> source) {
+        int oldSize = target.size();
+        int newSize = source.size();
+        int start = 0;
+        while (start < oldSize && start < newSize && target.get(start) == source.get(start)) {
+            start++;
+        }
+        int oldEnd = oldSize;
+        int newEnd = newSize;
+        while (oldEnd > start && newEnd > start && target.get(oldEnd - 1) == source.get(newEnd - 1)) {
+            oldEnd--;
+            newEnd--;
+        }
+        if (start == oldEnd && start == newEnd) {
+            return 0;
+        }
+
+        List<T> oldMiddle = new ArrayList<>(target.subList(start, oldEnd));
+        List<? extends T> newMiddle = source.subList(start, newEnd);
+
+        // Position of every new item; duplicates cannot be matched by identity
+        Map<T, Integer> newIndex = new IdentityHashMap<>(newMiddle.size() * 2);
+        for (int i = 0; i < newMiddle.size(); i++) {
+            if (newIndex.put(newMiddle.get(i), i) != null) {
+                return replace(target, start, oldEnd, newMiddle);
+            }
+        }
+        int[] targetIndex = new int[oldMiddle.size()];
+        Map<T, Boolean> seen = new IdentityHashMap<>(oldMiddle.size() * 2);
+        for (int i = 0; i < oldMiddle.size(); i++) {
+            T item = oldMiddle.get(i);
+            if (seen.put(item, Boolean.TRUE) != null) {
+                return replace(target, start, oldEnd, newMiddle);
+            }
+            Integer index = newIndex.get(item);
+            targetIndex[i] = index != null ? index : -1;
+        }
+
+        boolean[] keepOld = longestIncreasing(targetIndex);
+        boolean[] keepNew = new boolean[newMiddle.size()];
+        int kept = 0;
+        for (int i = 0; i < keepOld.length; i++) {
+            if (keepOld[i]) {
+                keepNew[targetIndex[i]] = true;
+                kept++;
+            }
+        }
+        if (kept == 0) {
+            return replace(target, start, oldEnd, newMiddle);
+        }
+
+        // Remove runs of items that are gone or moved, back to front so indexes stay valid
+        for (int i = keepOld.length - 1; i >= 0; i--) {
+            if (keepOld[i]) {
+                continue;
+            }
+            int runStart = i;
+            while (runStart > 0 && !keepOld[runStart - 1]) {
+                runStart--;
+            }
+            target.subList(start + runStart, start + i + 1).clear();
+            i = runStart;
+        }
+
+        // The kept items are now in new order; insert runs of new or moved items around them
+        int position = start;
+        for (int i = 0; i < keepNew.length; ) {
+            if (keepNew[i]) {
+                position++;
+                i++;
+                continue;
+            }
+            int runEnd = i;
+            while (runEnd < keepNew.length && !keepNew[runEnd]) {
+                runEnd++;
+            }
+            target.addAll(position, newMiddle.subList(i, runEnd));
+            position += runEnd - i;
+            i = runEnd;
+        }
+        return (oldMiddle.size() - kept) + (newMiddle.size() - kept);
+    }
+
+    /*
+     * Replace the range [from, to) of target with items
+     */
+    private static <T> int replace(List<T> target, int from, int to, List<? extends T> items) {
+        target.subList(from, to).clear();
+        target.addAll(from, items);
+        return (to - from) + items.size();
+    }
+
+    /*
+     * Mark a longest strictly increasing subsequence of the non-negative values
+     */
+    private static boolean[] longestIncreasing(int[] values) {
+        int[] tailIndex = new int[values.length]; // tailIndex[k]: index of the smallest tail of a run of length k+1
+        int[] previous = new int[values.length];
+        Arrays.fill(previous, -1);
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            int value = values[i];
+            if (value < 0) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tailIndex[mid]] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low > 0) {
+                previous[i] = tailIndex[low - 1];
+            }
+            tailIndex[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] keep = new boolean[values.length];
+        for (int i = length > 0 ? tailIndex[length - 1] : -1; i >= 0; i = previous[i]) {
+            keep[i] = true;
+        }
+        return keep;
+    }
+}
@@ -2,7 +2,12 @@ package views;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import controllers.AudioPlayer;
 import javafx.application.Platform;
@@ -37,13 +42,15 @@ import javafx.scene.layout.VBox;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import models.Album;
-import models.Artist;
 import models.MusicLibrary;
 import models.Playlist;
 import models.Song;
 import utils.ConfigManager;
+import utils.ImportJob;
+import utils.ImportProgress;
 import utils.ImportResult;
+import utils.LibraryJournal;
+import utils.Metrics;
 import utils.MusicImporter;
 import utils.MusicLibraryIO;
 import utils.PlaylistIO;
@@ -71,7 +78,9 @@ public class MainWindow {
     private Button previousButton; // previous button
     private Button nextButton; // next button
     private Button loopButton; // loop button
+    private Button shuffleButton; // shuffle button
     private TextField searchField; // search field
+    private AsyncSongSearch songSearch; // runs searchField queries in the background
 
     // Placeholder ID used for the 'View Full Library' top list item
     private static final String LIBRARY_PLACEHOLDER_ID = "__VIEW_LIBRARY__";
@@ -80,6 +89,18 @@ public class MainWindow {
     private Playlist currentPlaylist; // currently loaded playlist (null = library mode)
     private boolean isSeeking = false; // true if user is currently dragging the progress slider
     private boolean loopCurrent = false; // true if current song should loop when finished
+    private final LibraryJournal journal = LibraryJournal.getInstance(); // records edits between snapshots
+
+    // Background import state
+    private ImportJob activeImport; // import or rescan in progress, null if none
+    private HBox importStatusBar; // progress and controls, shown while an import runs
+    private Label importStatusLabel; // import progress text
+    private Button importPauseButton; // pauses or resumes the import
+    private final ConcurrentLinkedQueue<Song> importedSongs = new ConcurrentLinkedQueue<>(); // committed, not yet shown
+    private final AtomicReference<ImportProgress> importProgress = new AtomicReference<>(); // latest, not yet shown
+    private final AtomicBoolean importPublishScheduled = new AtomicBoolean(); // publishImportUpdates is queued
+    private final AtomicReference<long[]> playbackPosition = new AtomicReference<>(); // latest {position, duration}, not yet shown
+    private final AtomicBoolean positionPublishScheduled = new AtomicBoolean(); // publishPosition is queued
 
     /*
      * Constructor
@@ -88,10 +109,14 @@ public class MainWindow {
         this.primaryStage = primaryStage;
         this.musicLibrary = MusicLibrary.getInstance();
         this.controller = new MusicPlayerController(this.musicLibrary);
+        startMetricsDump();
         // Load persisted library and playlists at startup
         try {
-            MusicLibraryIO.loadLibrary(musicLibrary);
-            musicLibrary.getAllPlaylists().addAll(PlaylistIO.loadPlaylists());
+            long journalSeq = MusicLibraryIO.loadLibrary(musicLibrary);
+            // Replay edits made after the last snapshot, e.g. before a crash
+            journal.recover(journalSeq);
+            // Playlists saved separately by older versions join the snapshot once
+            PlaylistIO.migratePlaylists(musicLibrary, journal);
         } catch (IOException e) {
             Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("Load Error");
@@ -101,6 +126,11 @@ public class MainWindow {
         }
 
         setupAudioPlayerListeners();
+        ConfigManager config = ConfigManager.getInstance();
+        controller.setPositionUpdateIntervals(config.getInt("positionUpdateMillis", 100),
+                config.getInt("positionUpdateHiddenMillis", 1000));
+        // Slow position updates down while nobody can see them
+        primaryStage.iconifiedProperty().addListener((obs, was, iconified) -> controller.setUiVisible(!iconified));
         initializeUI();
     }
 
@@ -161,6 +191,17 @@ public class MainWindow {
         }
         // On close, stop playback threads, persist library and playlists and save config
         primaryStage.setOnCloseRequest(evt -> {
+            songSearch.shutdown();
+            // Stop a running import; songs it already committed are saved below
+            if (activeImport != null) {
+                activeImport.cancel();
+                try {
+                    activeImport.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
             // Ensure audio/background threads are stopped cleanly
             if (controller != null) {
                 try {
@@ -175,7 +216,7 @@ public class MainWindow {
             }
 
             try {
-                MusicLibraryIO.saveLibrary(musicLibrary);
+                journal.close();
             } catch (IOException e) {
                 Alert err = new Alert(Alert.AlertType.ERROR);
                 err.setTitle("Save Error");
@@ -184,16 +225,6 @@ public class MainWindow {
                 err.showAndWait();
             }
 
-            try {
-                PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
-            } catch (IOException e) {
-                Alert err = new Alert(Alert.AlertType.ERROR);
-                err.setTitle("Save Error");
-                err.setHeaderText("Failed to save playlists");
-                err.setContentText(e.getMessage());
-                err.showAndWait();
-            }
-
             try {
                 ConfigManager.getInstance().saveConfig();
             } catch (IOException e) {
@@ -203,10 +234,24 @@ public class MainWindow {
                 err.setContentText(e.getMessage());
                 err.showAndWait();
             }
+            Metrics.getInstance().stopDump();
         });
         primaryStage.show();
     }
 
+    /*
+     * Write metrics to a local file periodically (Prometheus text, or JSON for a .json file).
+     * An empty metricsFile or a non-positive metricsIntervalSeconds turns this off.
+     */
+    private void startMetricsDump() {
+        ConfigManager config = ConfigManager.getInstance();
+        String file = config.getString("metricsFile", "metrics.prom");
+        int intervalSeconds = config.getInt("metricsIntervalSeconds", 60);
+        if (!file.isEmpty() && intervalSeconds > 0) {
+            Metrics.getInstance().startDump(new File(file), intervalSeconds * 1000L);
+        }
+    }
+
     /*
      * Create the top menu bar with menus and items
      */
@@ -220,10 +265,16 @@ public class MainWindow {
         importItem.setOnAction(e -> importMusic());
         importItem.setAccelerator(javafx.scene.input.KeyCombination.keyCombination("CTRL+I"));
         importItem.setId("menu-import");
+        MenuItem rescanItem = new MenuItem("Rescan Folder...");
+        rescanItem.setOnAction(e -> rescanMusic());
+        rescanItem.setId("menu-rescan");
+        MenuItem exportItem = new MenuItem("Export Library as JSON...");
+        exportItem.setOnAction(e -> exportLibraryJson());
+        exportItem.setId("menu-export-json");
         MenuItem exitItem = new MenuItem("Exit");
         exitItem.setOnAction(e -> Platform.exit());
         exitItem.setAccelerator(javafx.scene.input.KeyCombination.keyCombination("CTRL+Q"));
-        fileMenu.getItems().addAll(importItem, new SeparatorMenuItem(), exitItem);
+        fileMenu.getItems().addAll(importItem, rescanItem, exportItem, new SeparatorMenuItem(), exitItem);
 
         // Playlist menu
         Menu playlistMenu = new Menu("Playlist");
@@ -273,6 +324,9 @@ public class MainWindow {
         searchField = new TextField();
         searchField.setPromptText("Search songs, artists, albums...");
         searchField.setAccessibleText("Search songs, artists, albums");
+        ConfigManager config = ConfigManager.getInstance();
+        songSearch = new AsyncSongSearch(musicLibrary, config.getInt("searchDebounceMillis", 150),
+                config.getInt("searchResultLimit", 2000));
         searchField.textProperty().addListener((obs, oldText, newText) -> performSearch(newText));
 
         // Songs list
@@ -296,7 +350,23 @@ public class MainWindow {
 
         refreshSongList();
 
-        libraryPane.getChildren().addAll(searchField, songsLabel, songListView);
+        // Import progress, hidden until an import starts
+        importStatusLabel = new Label();
+        importPauseButton = new Button("Pause");
+        importPauseButton.setOnAction(e -> toggleImportPause());
+        Button importCancelButton = new Button("Cancel");
+        importCancelButton.setOnAction(e -> {
+            if (activeImport != null) {
+                activeImport.cancel();
+                importStatusLabel.setText("Cancelling import...");
+            }
+        });
+        importStatusBar = new HBox(10, importStatusLabel, importPauseButton, importCancelButton);
+        importStatusBar.setAlignment(Pos.CENTER_LEFT);
+        importStatusBar.setVisible(false);
+        importStatusBar.setManaged(false);
+
+        libraryPane.getChildren().addAll(searchField, importStatusBar, songsLabel, songListView);
         VBox.setVgrow(songListView, Priority.ALWAYS);
 
         return libraryPane;
@@ -351,9 +421,8 @@ public class MainWindow {
                         confirm.setContentText("Are you sure? This action cannot be undone.");
                         confirm.showAndWait().ifPresent(bt -> {
                             if (bt.getButtonData().isDefaultButton()) {
-                                musicLibrary.removePlaylist(p);
                                 try {
-                                    PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
+                                    journal.deletePlaylist(p);
                                 } catch (IOException ex) {
                                     Alert err = new Alert(Alert.AlertType.ERROR);
                                     err.setTitle("Save Error");
@@ -451,6 +520,7 @@ public class MainWindow {
         stopButton = new Button("⏹");
         nextButton = new Button("⏭");
         loopButton = new Button("🔁");
+        shuffleButton = new Button("🔀");
         previousButton.getStyleClass().add("controls-button");
         playPauseButton.getStyleClass().add("controls-button");
         stopButton.getStyleClass().add("controls-button");
@@ -484,6 +554,7 @@ public class MainWindow {
 
         loopButton.setOnAction(e -> {
             loopCurrent = !loopCurrent;
+            controller.setLoopCurrent(loopCurrent);
             // visually indicate state
             loopButton.getStyleClass().removeAll("loop-on");
             if (loopCurrent) {
@@ -491,12 +562,28 @@ public class MainWindow {
             }
         });
 
+        shuffleButton.getStyleClass().add("controls-button");
+        shuffleButton.setPrefWidth(36.0);
+        shuffleButton.setId("btn-shuffle");
+        shuffleButton.setAccessibleText("Shuffle");
+
+        shuffleButton.setOnAction(e -> {
+            boolean shuffle = !controller.isShuffle();
+            controller.setShuffle(shuffle);
+            // same "on" style as loop
+            shuffleButton.getStyleClass().removeAll("loop-on");
+            if (shuffle) {
+                shuffleButton.getStyleClass().add("loop-on");
+            }
+        });
+
         // Ensure stop button is small and matches loop
         stopButton.getStyleClass().add("controls-button");
         stopButton.setPrefWidth(36.0);
 
-        // Order: previous, play/pause, next, loop, stop (loop/stop to the right of forward)
-        controlsBox.getChildren().addAll(previousButton, playPauseButton, nextButton, loopButton, stopButton);
+        // Order: previous, play/pause, next, loop, shuffle, stop (loop/shuffle/stop to the right of forward)
+        controlsBox.getChildren().addAll(previousButton, playPauseButton, nextButton, loopButton, shuffleButton,
+                stopButton);
 
         // Volume control
         HBox volumeBox = new HBox(5);
@@ -538,6 +625,24 @@ public class MainWindow {
         return bottomControls;
     }
 
+    /*
+     * Show the latest playback position reported by the player
+     */
+    private void publishPosition() {
+        positionPublishScheduled.set(false);
+        long[] latest = playbackPosition.get();
+        long position = latest[0];
+        long duration = latest[1];
+        if (!isSeeking) {
+            double progress = duration > 0 ? (double) position / duration * 100 : 0;
+            progressSlider.setValue(progress);
+        }
+
+        String currentTime = formatTime(position / 1000000);
+        String totalTime = formatTime(duration / 1000000);
+        timeLabel.setText(currentTime + " / " + totalTime);
+    }
+
     /*
      * Setup listeners for audio player events
      */
@@ -547,6 +652,14 @@ public class MainWindow {
             public void onSongChanged(Song song) {
                 Platform.runLater(() -> {
                     nowPlayingLabel.setText("Now Playing: " + song.toString());
+                    // Follow gapless transitions, which happen without playNext. The controller has
+                    // already moved its queue (its listener runs first), so its index locates the
+                    // song without scanning the list; it only applies if that list is the one shown
+                    int index = controller.getCurrentSongIndex();
+                    List<Song> items = songListView.getItems();
+                    if (index >= 0 && index < items.size() && items.get(index) == song) {
+                        songListView.getSelectionModel().select(index);
+                    }
                 });
             }
 
@@ -559,16 +672,11 @@ public class MainWindow {
 
             @Override
             public void onPositionChanged(long position, long duration) {
-                Platform.runLater(() -> {
-                    if (!isSeeking) {
-                        double progress = duration > 0 ? (double) position / duration * 100 : 0;
-                        progressSlider.setValue(progress);
-                    }
-
-                    String currentTime = formatTime(position / 1000000);
-                    String totalTime = formatTime(duration / 1000000);
-                    timeLabel.setText(currentTime + " / " + totalTime);
-                });
+                // Keep at most one update queued on the FX thread; it shows the latest position
+                playbackPosition.set(new long[] { position, duration });
+                if (positionPublishScheduled.compareAndSet(false, true)) {
+                    Platform.runLater(MainWindow.this::publishPosition);
+                }
             }
 
             @Override
@@ -606,19 +714,10 @@ public class MainWindow {
                 Platform.runLater(() -> {
                     if (loopCurrent) {
                         // restart the same song
-                        List<Song> currentList;
-                        if (currentPlaylist != null && currentPlaylist.getSongCount() > 0) {
-                            currentList = currentPlaylist.getSongs();
-                        } else {
-                            currentList = songListView.getItems();
-                        }
-                        int idx = controller.getCurrentSongIndex();
-                        if (idx >= 0 && idx < currentList.size()) {
-                            Song s = currentList.get(idx);
-                            if (s != null) {
-                                controller.seek(0);
-                                controller.playSong(s);
-                            }
+                        Song s = controller.getCurrentSong();
+                        if (s != null) {
+                            controller.seek(0);
+                            controller.playSong(s, controller.getCurrentSongIndex());
                         }
                     } else {
                         playNext();
@@ -641,8 +740,9 @@ public class MainWindow {
      * Refresh the song list to show all songs in the library
      */
     private void refreshSongList() {
-        songListView.getItems().clear();
-        songListView.getItems().addAll(musicLibrary.getAllSongs());
+        // Showing the library supersedes a search still in flight
+        songSearch.cancel();
+        ListDiff.apply(songListView.getItems(), musicLibrary.getAllSongs());
         // Keep controller in sync with the currently-shown list
         if (controller != null) {
             controller.setCurrentList(songListView.getItems());
@@ -758,6 +858,12 @@ public class MainWindow {
                 }
             });
 
+            MenuItem playNextItem = new MenuItem("Play Next");
+            playNextItem.setOnAction(e -> controller.playNextInQueue(cell.getItem()));
+
+            MenuItem queueItem = new MenuItem("Add to Queue");
+            queueItem.setOnAction(e -> controller.addToQueue(cell.getItem()));
+
             MenuItem remove = new MenuItem("Remove from playlist...");
             remove.setOnAction(e -> {
                 Song s = cell.getItem();
@@ -777,7 +883,7 @@ public class MainWindow {
                 }
                 List<Playlist> containing = new java.util.ArrayList<>();
                 for (Playlist p : allPlaylists) {
-                    if (p.getSongs().contains(s)) {
+                    if (p.containsSong(s)) {
                         containing.add(p);
                     }
                 }
@@ -799,7 +905,7 @@ public class MainWindow {
                     if (chosen == null) {
                         return;
                     }
-                    if (!chosen.getSongs().contains(s)) {
+                    if (!chosen.containsSong(s)) {
                         Alert info = new Alert(Alert.AlertType.INFORMATION);
                         info.setTitle("Not Found");
                         info.setHeaderText("Song not in playlist");
@@ -813,9 +919,8 @@ public class MainWindow {
                     confirm.setContentText("Are you sure?");
                     confirm.showAndWait().ifPresent(bt -> {
                         if (bt.getButtonData().isDefaultButton()) {
-                            chosen.removeSong(s);
                             try {
-                                PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
+                                journal.removeSongFromPlaylist(chosen, s);
                             } catch (IOException ex) {
                                 Alert err = new Alert(Alert.AlertType.ERROR);
                                 err.setTitle("Save Error");
@@ -833,7 +938,7 @@ public class MainWindow {
                 });
             });
 
-            menu.getItems().addAll(edit, addTo, remove);
+            menu.getItems().addAll(edit, addTo, playNextItem, queueItem, remove);
             cell.setContextMenu(menu);
 
             // If a playlist is active, enable drag-and-drop reordering (playlist-only behavior)
@@ -864,9 +969,8 @@ public class MainWindow {
                         int draggedIndex = Integer.parseInt(db.getString());
                         int thisIndex = cell.getIndex();
                         if (currentPlaylist != null) {
-                            currentPlaylist.moveSong(draggedIndex, thisIndex);
                             try {
-                                PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
+                                journal.moveSongInPlaylist(currentPlaylist, draggedIndex, thisIndex);
                             } catch (IOException ex) {
                                 Alert err = new Alert(Alert.AlertType.ERROR);
                                 err.setTitle("Save Error");
@@ -888,15 +992,13 @@ public class MainWindow {
     }
 
     /*
-     * Perform a search in the music library and update the song list
+     * Search the music library in the background and show the results as they arrive
      */
     private void performSearch(String query) {
         if (query == null || query.trim().isEmpty()) {
             refreshSongList();
         } else {
-            List<Song> results = musicLibrary.searchSongs(query.trim());
-            songListView.getItems().clear();
-            songListView.getItems().addAll(results);
+            songSearch.submit(query.trim(), results -> ListDiff.apply(songListView.getItems(), results));
         }
     }
 
@@ -907,7 +1009,8 @@ public class MainWindow {
         if (song == null) {
             return;
         }
-        controller.playSong(song);
+        // The selected row is usually the song; it saves the controller searching for it
+        controller.playSong(song, songListView.getSelectionModel().getSelectedIndex());
         // Select in UI
         songListView.getSelectionModel().select(song);
     }
@@ -959,63 +1062,15 @@ public class MainWindow {
                 String newTrack = trackField.getText() != null ? trackField.getText().trim() : "";
                 String newPath = pathField.getText() != null ? pathField.getText().trim() : "";
 
-                if (!newTitle.isEmpty()) {
-                    song.setTitle(newTitle);
-                }
-
-                // Artist: find or create
-                Artist artistObj = song.getArtist();
-                if (!newArtist.isEmpty()) {
-                    Artist found = null;
-                    for (Artist a : musicLibrary.getAllArtists()) {
-                        if (a.getName().equals(newArtist)) {
-                            found = a;
-                            break;
-                        }
-                    }
-                    if (found == null) {
-                        found = new Artist(newArtist);
-                        musicLibrary.addArtist(found);
-                    }
-                    artistObj = found;
-                    song.setArtist(found);
-                }
-
-                // Album: find or create and associate with artist
-                if (!newAlbum.isEmpty()) {
-                    Album found = null;
-                    for (Album al : musicLibrary.getAllAlbums()) {
-                        if (al.getTitle().equals(newAlbum) && al.getArtist().equals(artistObj)) {
-                            found = al;
-                            break;
-                        }
-                    }
-                    if (found == null) {
-                        found = new Album(newAlbum, artistObj);
-                        musicLibrary.addAlbum(found);
-                        if (artistObj != null) {
-                            artistObj.addAlbum(found);
-                        }
-                    }
-                    song.setAlbum(found);
-                    found.addSong(song);
-                }
-
-                if (!newGenre.isEmpty()) {
-                    song.setGenre(newGenre);
-                }
+                Integer trackNumber = null;
                 if (!newTrack.isEmpty()) {
                     try {
-                        song.setTrackNumber(Integer.parseInt(newTrack));
+                        trackNumber = Integer.parseInt(newTrack);
                     } catch (NumberFormatException ignored) {
                     }
                 }
-                if (!newPath.isEmpty()) {
-                    song.setFilePath(newPath);
-                }
-
                 try {
-                    MusicLibraryIO.saveLibrary(musicLibrary);
+                    journal.editSong(song, newTitle, newArtist, newAlbum, newGenre, trackNumber, newPath);
                 } catch (IOException e) {
                     Alert err = new Alert(Alert.AlertType.ERROR);
                     err.setTitle("Save Error");
@@ -1025,6 +1080,8 @@ public class MainWindow {
                 }
 
                 refreshSongList();
+                // The song was edited in place, so the list diff leaves its cell as it was
+                songListView.refresh();
             }
         });
     }
@@ -1061,20 +1118,18 @@ public class MainWindow {
                 create.showAndWait().ifPresent(name -> {
                     if (name != null && !name.trim().isEmpty()) {
                         Playlist p = new Playlist(name.trim());
-                        p.addSong(song);
-                        musicLibrary.addPlaylist(p);
                         try {
-                            PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
+                            journal.createPlaylist(p);
+                            journal.addSongToPlaylist(p, song);
                         } catch (IOException ex) {
                         }
                         refreshPlaylistList();
                     }
                 });
             } else {
-                if (!chosen.getSongs().contains(song)) {
-                    chosen.addSong(song);
+                if (!chosen.containsSong(song)) {
                     try {
-                        PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
+                        journal.addSongToPlaylist(chosen, song);
                     } catch (IOException ex) {
                     }
                     refreshPlaylistList();
@@ -1141,9 +1196,12 @@ public class MainWindow {
     }
 
     /*
-     * Import music files or a folder, updating the library and UI accordingly
+     * Import music files or a folder in the background, updating the library and UI as songs arrive
      */
     private void importMusic() {
+        if (isImportRunning()) {
+            return;
+        }
         try {
             ConfigManager config = ConfigManager.getInstance();
             String lastPath = config.getString("lastImportPath", System.getProperty("user.home"));
@@ -1169,38 +1227,7 @@ public class MainWindow {
                 List<File> files = chooser.showOpenMultipleDialog(primaryStage);
                 if (files != null && !files.isEmpty()) {
                     File[] filesArr = files.toArray(File[]::new);
-                    ImportResult importRes = MusicImporter.importAudioFiles(filesArr);
-                    if (importRes.successCount() > 0) {
-                        config.setString("lastImportPath", files.get(0).getParent());
-                        if (!config.saveConfigSafe()) {
-                            Alert err = new Alert(Alert.AlertType.ERROR);
-                            err.setTitle("Config Save Error");
-                            err.setHeaderText("Failed to save import path");
-                            err.setContentText("Your import will continue but the last import path could not be saved.");
-                            err.showAndWait();
-                        }
-                        refreshSongList();
-                        try {
-                            PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
-                        } catch (IOException ex) {
-                            Alert err = new Alert(Alert.AlertType.ERROR);
-                            err.setTitle("Save Error");
-                            err.setHeaderText("Failed to persist playlists");
-                            err.setContentText(ex.getMessage());
-                            err.showAndWait();
-                        }
-                    }
-
-                    // Show summary of results
-                    Alert summary = new Alert(Alert.AlertType.INFORMATION);
-                    summary.setTitle("Import Summary");
-                    summary.setHeaderText("Imported " + importRes.successCount() + " songs, " + importRes.failureCount() + " failures");
-                    if (importRes.failureCount() > 0) {
-                        StringBuilder detail = new StringBuilder();
-                        importRes.getFailures().forEach(f -> detail.append(f.getFile().getName()).append(": ").append(f.getReason()).append("\n"));
-                        summary.setContentText(detail.toString());
-                    }
-                    summary.showAndWait();
+                    runImport(false, files.get(0).getParent(), listener -> MusicImporter.startImport(filesArr, listener));
                 }
 
             } else if (result == folderBtn) {
@@ -1209,37 +1236,7 @@ public class MainWindow {
                 dirChooser.setInitialDirectory(new File(lastPath).isDirectory() ? new File(lastPath) : new File(System.getProperty("user.home")));
                 File dir = dirChooser.showDialog(primaryStage);
                 if (dir != null && dir.isDirectory()) {
-                    ImportResult importRes = MusicImporter.importFromDirectoryResult(dir);
-                    if (importRes.successCount() > 0) {
-                        config.setString("lastImportPath", dir.getAbsolutePath());
-                        if (!config.saveConfigSafe()) {
-                            Alert err = new Alert(Alert.AlertType.ERROR);
-                            err.setTitle("Config Save Error");
-                            err.setHeaderText("Failed to save import path");
-                            err.setContentText("Your import will continue but the last import path could not be saved.");
-                            err.showAndWait();
-                        }
-                        refreshSongList();
-                        try {
-                            PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
-                        } catch (IOException ex) {
-                            Alert err = new Alert(Alert.AlertType.ERROR);
-                            err.setTitle("Save Error");
-                            err.setHeaderText("Failed to persist playlists");
-                            err.setContentText(ex.getMessage());
-                            err.showAndWait();
-                        }
-                    }
-
-                    Alert summary = new Alert(Alert.AlertType.INFORMATION);
-                    summary.setTitle("Import Summary");
-                    summary.setHeaderText("Imported " + importRes.successCount() + " songs, " + importRes.failureCount() + " failures");
-                    if (importRes.failureCount() > 0) {
-                        StringBuilder detail = new StringBuilder();
-                        importRes.getFailures().forEach(f -> detail.append(f.getFile().getName()).append(": ").append(f.getReason()).append("\n"));
-                        summary.setContentText(detail.toString());
-                    }
-                    summary.showAndWait();
+                    runImport(false, dir.getAbsolutePath(), listener -> MusicImporter.startImport(new File[] { dir }, listener));
                 }
             } else {
                 // Cancelled
@@ -1255,6 +1252,215 @@ public class MainWindow {
         }
     }
 
+    /*
+     * Rescan a previously imported folder in the background, picking up new, changed and deleted files
+     */
+    private void rescanMusic() {
+        if (isImportRunning()) {
+            return;
+        }
+        try {
+            ConfigManager config = ConfigManager.getInstance();
+            String lastPath = config.getString("lastImportPath", System.getProperty("user.home"));
+
+            DirectoryChooser dirChooser = new DirectoryChooser();
+            dirChooser.setTitle("Rescan Music Folder");
+            dirChooser.setInitialDirectory(new File(lastPath).isDirectory() ? new File(lastPath) : new File(System.getProperty("user.home")));
+            File dir = dirChooser.showDialog(primaryStage);
+            if (dir == null || !dir.isDirectory()) {
+                return;
+            }
+            runImport(true, null, listener -> MusicImporter.startRescan(dir, listener));
+
+        } catch (Exception e) {
+            System.err.println("Rescan failed: " + e.getMessage());
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Rescan Error");
+            alert.setHeaderText("Failed to rescan music folder");
+            alert.setContentText(e.getMessage());
+            alert.showAndWait();
+        }
+    }
+
+    /*
+     * Tell the user if an import is already running; only one runs at a time
+     */
+    private boolean isImportRunning() {
+        if (activeImport == null) {
+            return false;
+        }
+        Alert info = new Alert(Alert.AlertType.INFORMATION);
+        info.setTitle("Import Running");
+        info.setHeaderText("An import is already running");
+        info.setContentText("Wait for it to finish or cancel it before starting another one.");
+        info.showAndWait();
+        return true;
+    }
+
+    /*
+     * Start an import or rescan and show its progress. The job's listener runs on the import
+     * thread; it only queues songs and progress and schedules at most one publishImportUpdates
+     * at a time, so the FX thread sees coalesced batches however fast songs are committed.
+     */
+    private void runImport(boolean rescan, String importPath, Function<ImportJob.Listener, ImportJob> starter) {
+        importedSongs.clear();
+        importProgress.set(null);
+        importStatusLabel.setText(rescan ? "Rescanning..." : "Importing...");
+        importPauseButton.setText("Pause");
+        importStatusBar.setVisible(true);
+        importStatusBar.setManaged(true);
+
+        activeImport = starter.apply(new ImportJob.Listener() {
+            @Override
+            public void onProgress(ImportProgress progress) {
+                importProgress.set(progress);
+                scheduleImportPublish();
+            }
+
+            @Override
+            public void onSongsCommitted(List<Song> songs) {
+                importedSongs.addAll(songs);
+                scheduleImportPublish();
+            }
+
+            @Override
+            public void onFinished(ImportResult result, ImportProgress progress) {
+                Platform.runLater(() -> finishImport(result, progress, rescan, importPath));
+            }
+        });
+    }
+
+    private void scheduleImportPublish() {
+        if (importPublishScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::publishImportUpdates);
+        }
+    }
+
+    /*
+     * Show the songs committed since the last call and the latest progress (FX thread)
+     */
+    private void publishImportUpdates() {
+        importPublishScheduled.set(false);
+        List<Song> added = new ArrayList<>();
+        Song song;
+        while ((song = importedSongs.poll()) != null) {
+            added.add(song);
+        }
+        // New songs belong at the end of the library view; other views are refreshed when shown
+        if (!added.isEmpty() && currentPlaylist == null && searchField.getText().trim().isEmpty()) {
+            songListView.getItems().addAll(added);
+        }
+        ImportProgress progress = importProgress.getAndSet(null);
+        if (progress != null && activeImport != null && !activeImport.isCancelled()) {
+            importStatusLabel.setText((activeImport.isPaused() ? "Paused: " : "Importing: ") + progress);
+        }
+    }
+
+    private void toggleImportPause() {
+        if (activeImport == null) {
+            return;
+        }
+        if (activeImport.isPaused()) {
+            activeImport.resume();
+            importPauseButton.setText("Pause");
+            importStatusLabel.setText("Importing: " + activeImport.getProgress());
+        } else {
+            activeImport.pause();
+            importPauseButton.setText("Resume");
+            importStatusLabel.setText("Paused: " + activeImport.getProgress());
+        }
+    }
+
+    /*
+     * Publish the last songs, persist the changes and summarize the import (FX thread)
+     */
+    private void finishImport(ImportResult importRes, ImportProgress progress, boolean rescan, String importPath) {
+        if (!primaryStage.isShowing()) {
+            // Cancelled by closing the window, which saves the library itself
+            return;
+        }
+        publishImportUpdates();
+        boolean cancelled = activeImport != null && activeImport.isCancelled();
+        activeImport = null;
+        importStatusBar.setVisible(false);
+        importStatusBar.setManaged(false);
+
+        boolean changed = importRes.successCount() > 0 || importRes.removedCount() > 0;
+        if (rescan && changed) {
+            // Rescans also update and remove songs, which batches of new songs do not cover
+            refreshSongList();
+            songListView.refresh();
+            refreshPlaylistList();
+        } else if (changed && currentPlaylist == null && !searchField.getText().trim().isEmpty()) {
+            performSearch(searchField.getText());
+        }
+        if (importPath != null && importRes.successCount() > 0) {
+            ConfigManager config = ConfigManager.getInstance();
+            config.setString("lastImportPath", importPath);
+            if (!config.saveConfigSafe()) {
+                Alert err = new Alert(Alert.AlertType.ERROR);
+                err.setTitle("Config Save Error");
+                err.setHeaderText("Failed to save import path");
+                err.setContentText("Your import will continue but the last import path could not be saved.");
+                err.showAndWait();
+            }
+        }
+        if (changed) {
+            try {
+                journal.compact();
+            } catch (IOException ex) {
+                Alert err = new Alert(Alert.AlertType.ERROR);
+                err.setTitle("Save Error");
+                err.setHeaderText("Failed to save library");
+                err.setContentText(ex.getMessage());
+                err.showAndWait();
+            }
+        }
+
+        // Show summary of results
+        Alert summary = new Alert(Alert.AlertType.INFORMATION);
+        String outcome = (importRes.duplicateCount() > 0 ? ", " + importRes.duplicateCount() + " duplicates skipped" : "")
+                + (cancelled ? " (cancelled)" : "")
+                + (importRes.getError() != null ? " (stopped by an error: " + importRes.getError() + ")" : "");
+        if (rescan) {
+            summary.setTitle("Rescan Summary");
+            summary.setHeaderText("Updated " + importRes.successCount() + " songs, removed " + importRes.removedCount()
+                    + ", unchanged " + importRes.unchangedCount() + ", " + importRes.failureCount() + " failures" + outcome);
+        } else {
+            summary.setTitle("Import Summary");
+            summary.setHeaderText("Imported " + importRes.successCount() + " songs, " + importRes.failureCount() + " failures" + outcome);
+        }
+        StringBuilder detail = new StringBuilder(String.format("%d files in %.1f s (%.0f files/s)%n",
+                progress.getFilesParsed() + progress.getFilesFailed(), progress.getElapsedMillis() / 1000.0,
+                progress.getFilesPerSecond()));
+        importRes.getFailures().forEach(f -> detail.append(f.getFile().getName()).append(": ").append(f.getReason()).append("\n"));
+        summary.setContentText(detail.toString());
+        summary.showAndWait();
+    }
+
+    /*
+     * Export the library as a JSON snapshot for use by other tools
+     */
+    private void exportLibraryJson() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export Library as JSON");
+        chooser.setInitialFileName("music-library.json");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSON Files (*.json)", "*.json"));
+        File file = chooser.showSaveDialog(primaryStage);
+        if (file == null) {
+            return;
+        }
+        try {
+            MusicLibraryIO.saveLibrary(musicLibrary, file);
+        } catch (IOException e) {
+            Alert err = new Alert(Alert.AlertType.ERROR);
+            err.setTitle("Export Error");
+            err.setHeaderText("Failed to export library");
+            err.setContentText(e.getMessage());
+            err.showAndWait();
+        }
+    }
+
     /*
      * Create a new playlist via a dialog and update UI accordingly
      */
@@ -1269,11 +1475,9 @@ public class MainWindow {
                 return;
             }
             Playlist playlist = new Playlist(name.trim());
-            musicLibrary.addPlaylist(playlist);
-            refreshPlaylistList();
             // Persist playlists
             try {
-                PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
+                journal.createPlaylist(playlist);
             } catch (IOException ex) {
                 Alert err = new Alert(Alert.AlertType.ERROR);
                 err.setTitle("Save Error");
@@ -1281,6 +1485,7 @@ public class MainWindow {
                 err.setContentText(ex.getMessage());
                 err.showAndWait();
             }
+            refreshPlaylistList();
         });
     }
 
@@ -1292,8 +1497,8 @@ public class MainWindow {
             return;
         }
         this.currentPlaylist = playlist;
-        songListView.getItems().clear();
-        songListView.getItems().addAll(playlist.getSongs());
+        songSearch.cancel();
+        ListDiff.apply(songListView.getItems(), playlist.getSongs());
         if (controller != null) {
             controller.setCurrentPlaylist(playlist);
         }
@@ -4,10 +4,11 @@ import java.io.IOException;
 import java.util.List;
 
 import controllers.AudioPlayer;
+import javafx.application.Platform;
 import models.MusicLibrary;
 import models.Playlist;
 import models.Song;
-import utils.PlaylistIO;
+import utils.LibraryJournal;
 
 /**
  * Controller that manages playback state and coordinates with the AudioPlayer.
@@ -20,12 +21,39 @@ public class MusicPlayerController {
 
     // Playback state
     private Playlist currentPlaylist; // null = library / arbitrary list mode
-    private List<Song> currentList; // reference to the current list shown in the UI
-    private int currentSongIndex = -1; // index within currentList or currentPlaylist, -1 if none
+    private final PlaybackQueue queue = new PlaybackQueue(); // play order over the current list or playlist
+    private boolean loopCurrent = false; // whether the current song repeats when it ends
 
     public MusicPlayerController(MusicLibrary musicLibrary) {
         this.musicLibrary = musicLibrary;
         this.audioPlayer = new AudioPlayer();
+        this.audioPlayer.addListener(new AudioPlayer.AudioPlayerListener() {
+            @Override
+            public void onSongChanged(Song song) {
+                // Also fired when the player continued into the prepared song on its own
+                Platform.runLater(() -> onSongChangedInternal(song));
+            }
+
+            @Override
+            public void onPlayStateChanged(AudioPlayer.PlaybackState state) {
+            }
+
+            @Override
+            public void onPositionChanged(long position, long duration) {
+            }
+
+            @Override
+            public void onVolumeChanged(float volume) {
+            }
+
+            @Override
+            public void onError(String error) {
+            }
+
+            @Override
+            public void onSongEnded() {
+            }
+        });
     }
 
     // Listener plumbing (UI will register a listener to receive events)
@@ -33,16 +61,19 @@ public class MusicPlayerController {
         audioPlayer.addListener(listener);
     }
 
-    // Playback controls (delegates to AudioPlayer and maintains index state)
+    // Playback controls (delegates to AudioPlayer and maintains the play queue)
     public void playSong(Song song) {
+        playSong(song, -1);
+    }
+
+    /*
+     * Play a song, given where the caller believes it is in the current list (-1 if unknown)
+     * so it does not have to be searched for
+     */
+    public void playSong(Song song, int indexHint) {
         if (song == null) return;
+        queue.play(song, indexHint);
         audioPlayer.playSong(song);
-
-        if (currentList != null) {
-            currentSongIndex = currentList.indexOf(song);
-        } else {
-            currentSongIndex = -1;
-        }
     }
 
     public void togglePlayPause() {
@@ -55,55 +86,80 @@ public class MusicPlayerController {
 
     public void stop() {
         audioPlayer.stop();
-        currentSongIndex = -1;
+        queue.clear();
     }
 
     public void playNext() {
-        List<Song> list = currentList;
-        if ((currentPlaylist != null && currentPlaylist.getSongCount() > 0)) {
-            list = currentPlaylist.getSongs();
-        }
-
-        if (list == null || list.isEmpty()) return;
-
-        int nextIndex = currentSongIndex >= 0 ? currentSongIndex + 1 : 0;
-        if (nextIndex < 0) nextIndex = 0;
-        if (nextIndex < 0 || nextIndex >= list.size()) {
+        Song next = queue.next();
+        if (next == null) {
             audioPlayer.stop();
             return;
         }
+        audioPlayer.playSong(next);
+    }
 
-        Song next = list.get(nextIndex);
-        if (next != null) {
-            currentSongIndex = nextIndex;
-            playSong(next);
-        }
+    /*
+     * Keep the queue in step with the player and prepare the song after it
+     */
+    private void onSongChangedInternal(Song song) {
+        queue.followPlayer(song);
+        prepareNextSong();
     }
 
-    public void playPrevious() {
-        List<Song> list = currentList;
-        if ((currentPlaylist != null && currentPlaylist.getSongCount() > 0)) {
-            list = currentPlaylist.getSongs();
-        }
+    /*
+     * Predict the song that will play when the current one ends, mirroring onSongEnded/playNext,
+     * and let the player pre-decode it for a gapless transition
+     */
+    private void prepareNextSong() {
+        audioPlayer.setNextSong(loopCurrent ? queue.getCurrent() : queue.peekNext());
+    }
+
+    public void setLoopCurrent(boolean loopCurrent) {
+        this.loopCurrent = loopCurrent;
+        prepareNextSong();
+    }
+
+    /*
+     * Play the current list in a random order without reordering it; previous and next then
+     * step through the songs in the order they were played
+     */
+    public void setShuffle(boolean shuffle) {
+        queue.setShuffle(shuffle);
+        prepareNextSong();
+    }
 
-        if (list == null || list.isEmpty()) return;
+    public boolean isShuffle() {
+        return queue.isShuffle();
+    }
 
-        int prevIndex = currentSongIndex >= 0 ? currentSongIndex - 1 : 0;
-        if (prevIndex < 0) {
-            // restart current track
-            if (currentSongIndex >= 0 && currentSongIndex < list.size()) {
-                Song current = list.get(currentSongIndex);
+    public void playPrevious() {
+        Song previous = queue.previous();
+        if (previous == null) {
+            // At the start: restart the current track
+            Song current = queue.getCurrent();
+            if (current != null) {
                 audioPlayer.seek(0);
                 audioPlayer.playSong(current);
             }
             return;
         }
+        audioPlayer.playSong(previous);
+    }
 
-        Song prev = list.get(prevIndex);
-        if (prev != null) {
-            currentSongIndex = prevIndex;
-            playSong(prev);
-        }
+    /*
+     * Add a song to the "up next" queue, played before the current list continues
+     */
+    public void addToQueue(Song song) {
+        queue.enqueue(song);
+        prepareNextSong();
+    }
+
+    /*
+     * Play a song right after the current one, ahead of anything already queued
+     */
+    public void playNextInQueue(Song song) {
+        queue.enqueueFirst(song);
+        prepareNextSong();
     }
 
     public void seek(long targetUs) {
@@ -121,6 +177,14 @@ public class MusicPlayerController {
         audioPlayer.setVolume(v);
     }
 
+    public void setPositionUpdateIntervals(long playingMillis, long hiddenMillis) {
+        audioPlayer.setPositionUpdateIntervals(playingMillis, hiddenMillis);
+    }
+
+    public void setUiVisible(boolean visible) {
+        audioPlayer.setUiVisible(visible);
+    }
+
     public boolean isPlaying() {
         return audioPlayer.isPlaying();
     }
@@ -130,17 +194,15 @@ public class MusicPlayerController {
     }
 
     public Song getCurrentSong() {
-        if (currentList != null && currentSongIndex >= 0 && currentSongIndex < currentList.size()) {
-            return currentList.get(currentSongIndex);
-        }
-        if (currentPlaylist != null && currentPlaylist.getSongCount() > 0 && currentSongIndex >= 0 && currentSongIndex < currentPlaylist.getSongCount()) {
-            return currentPlaylist.getSongs().get(currentSongIndex);
-        }
-        return null;
+        return queue.getCurrent();
     }
 
+    /*
+     * Index of the current song in the current list or playlist, -1 if it was played from
+     * the up next queue or is not in it
+     */
     public int getCurrentSongIndex() {
-        return currentSongIndex;
+        return queue.getCurrentIndex();
     }
 
     public Playlist getCurrentPlaylist() {
@@ -150,15 +212,15 @@ public class MusicPlayerController {
     public void setCurrentPlaylist(Playlist p) {
         this.currentPlaylist = p;
         if (p != null) {
-            this.currentList = p.getSongs();
+            queue.setSource(p.getSongs());
         }
-        this.currentSongIndex = -1;
+        prepareNextSong();
     }
 
     public void setCurrentList(List<Song> list) {
-        this.currentList = list;
         this.currentPlaylist = null;
-        this.currentSongIndex = -1;
+        queue.setSource(list);
+        prepareNextSong();
     }
 
     /**
@@ -166,14 +228,13 @@ public class MusicPlayerController {
      */
     public boolean moveSongInCurrentPlaylist(int from, int to) {
         if (currentPlaylist == null) return false;
-        currentPlaylist.moveSong(from, to);
         try {
-            PlaylistIO.savePlaylists(musicLibrary.getAllPlaylists());
+            LibraryJournal.getInstance().moveSongInPlaylist(currentPlaylist, from, to);
         } catch (IOException ex) {
             // caller/UI can surface errors if desired
         }
-        // After moving, refresh indices
-        this.currentSongIndex = -1;
+        // The queue follows the moved songs; only the prediction may have changed
+        prepareNextSong();
         return true;
     }
 
@@ -0,0 +1,351 @@
+package views;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import models.Song;
+
+/**
+ * Play order used by MusicPlayerController: a cursor over the active source (the song list
+ * shown in the UI or a playlist's live song view), an "up next" queue of songs to play before
+ * the source continues, and a bounded history for going back. Songs left by going back are
+ * remembered too, so moving forward again replays exactly what was played before.
+ *
+ * In shuffle mode the source is walked in the order of a LazyShuffle of its indexes instead
+ * of sequentially; the source itself is never reordered.
+ *
+ * The source is never copied. Moving to the next or previous song, peeking at the next one
+ * and jumping to a known index take constant time and allocate nothing. Songs are matched by
+ * identity; the cursor is located again with a linear scan only when the source was edited
+ * around it or replaced.
+ */
+final class PlaybackQueue {
+
+    private static final int HISTORY_LIMIT = 256; // songs remembered for previous() and for going forward again
+
+    private List<Song> source = Collections.emptyList();
+    private int cursor = -1; // index in source of the last song played from it, -1 if none
+    private Song cursorSong; // song at cursor, to notice edits to the source
+    private final ArrayDeque<Song> upNext = new ArrayDeque<>(); // played before the source continues
+    private final SongStack history = new SongStack(); // songs played before current
+    private final SongStack forward = new SongStack(); // songs left by previous(), replayed by next()
+    private LazyShuffle shuffle; // play order of the source in shuffle mode, null otherwise
+    private Random random = new Random();
+    private Song current; // song being played, null if none
+    private boolean currentFromSource; // current sits at cursor in source
+
+    /*
+     * Play from a new source list. If it contains the current song, the source continues
+     * after it; otherwise from its first song.
+     */
+    void setSource(List<Song> list) {
+        List<Song> next = list != null ? list : Collections.<Song>emptyList();
+        if (next == source) {
+            return;
+        }
+        source = next;
+        int index = current != null ? indexOf(current, -1) : -1;
+        cursor = index;
+        cursorSong = index >= 0 ? current : null;
+        currentFromSource = index >= 0;
+        forward.clear();
+        if (shuffle != null) {
+            shuffle = new LazyShuffle(random, index);
+        }
+    }
+
+    List<Song> getSource() {
+        return source;
+    }
+
+    /*
+     * Turn shuffle mode on or off. A new shuffle starts from the current song and plays every
+     * other song of the source once; turning it off continues sequentially after the current song.
+     */
+    void setShuffle(boolean on) {
+        setShuffle(on, new Random());
+    }
+
+    void setShuffle(boolean on, Random random) {
+        this.random = random;
+        shuffle = on ? new LazyShuffle(random, currentFromSource ? syncCursor() : -1) : null;
+        forward.clear();
+    }
+
+    boolean isShuffle() {
+        return shuffle != null;
+    }
+
+    /*
+     * Play the song at index in the source
+     */
+    Song jumpTo(int index) {
+        if (index < 0 || index >= source.size()) {
+            return null;
+        }
+        forward.clear();
+        return moveTo(index);
+    }
+
+    /*
+     * Play the given song. indexHint is where the caller believes it is in the source (or -1);
+     * a correct hint avoids searching for it. A song outside the source is played without
+     * moving the cursor.
+     */
+    Song play(Song song, int indexHint) {
+        int index = indexOf(song, indexHint);
+        if (index >= 0) {
+            return jumpTo(index);
+        }
+        forward.clear();
+        if (song != current) {
+            pushHistory();
+        }
+        current = song;
+        currentFromSource = false;
+        return current;
+    }
+
+    /*
+     * Advance to the next song: a song left by previous(), else the head of up next, else the
+     * song after the cursor (or the next shuffled one). Returns null (and stays put) at the end
+     * of the source or once a shuffle has played every song.
+     */
+    Song next() {
+        if (!forward.isEmpty()) {
+            pushHistory();
+            restore(forward.peekSong(), forward.peekIndex());
+            forward.pop();
+            return current;
+        }
+        if (!upNext.isEmpty()) {
+            pushHistory();
+            current = upNext.pollFirst();
+            currentFromSource = false;
+            return current;
+        }
+        int index = shuffle != null ? shuffle.next(source.size()) : syncCursor() + 1;
+        if (index < 0 || index >= source.size()) {
+            return null;
+        }
+        return moveTo(index);
+    }
+
+    /*
+     * The song next() would return, without moving
+     */
+    Song peekNext() {
+        if (!forward.isEmpty()) {
+            return forward.peekSong();
+        }
+        if (!upNext.isEmpty()) {
+            return upNext.peekFirst();
+        }
+        int index = shuffle != null ? shuffle.peek(source.size()) : syncCursor() + 1;
+        return index >= 0 && index < source.size() ? source.get(index) : null;
+    }
+
+    /*
+     * Go back to the previously played song, or (outside shuffle mode) to the song before
+     * the cursor when there is no history. The song left behind is replayed by next().
+     * Returns null if there is nothing to go back to.
+     */
+    Song previous() {
+        int at = syncCursor();
+        Song song;
+        int hint;
+        if (!history.isEmpty()) {
+            song = history.peekSong();
+            hint = history.peekIndex();
+            history.pop();
+        } else {
+            hint = at - (currentFromSource ? 1 : 0);
+            if (shuffle != null || hint < 0 || hint >= source.size()) {
+                return null;
+            }
+            song = source.get(hint);
+        }
+        if (current != null) {
+            forward.push(current, currentFromSource ? at : -1);
+        }
+        restore(song, hint);
+        return current;
+    }
+
+    /*
+     * Queue a song to play after the current one and anything queued before it
+     */
+    void enqueue(Song song) {
+        if (song != null) {
+            upNext.addLast(song);
+        }
+    }
+
+    /*
+     * Queue a song to play right after the current one
+     */
+    void enqueueFirst(Song song) {
+        if (song != null) {
+            upNext.addFirst(song);
+        }
+    }
+
+    int getUpNextCount() {
+        return upNext.size();
+    }
+
+    /*
+     * Follow a song change made by the player itself (a gapless continuation): advance if it
+     * is the predicted next song, otherwise play it from wherever it is
+     */
+    void followPlayer(Song song) {
+        if (song == null || song == current) {
+            return;
+        }
+        if (song == peekNext()) {
+            next();
+        } else {
+            play(song, -1);
+        }
+    }
+
+    Song getCurrent() {
+        return current;
+    }
+
+    /*
+     * Index of the current song in the source, or -1 if it was not played from the source
+     */
+    int getCurrentIndex() {
+        return currentFromSource ? syncCursor() : -1;
+    }
+
+    /*
+     * Forget the current song and the history; up next is kept, a shuffle starts over
+     */
+    void clear() {
+        current = null;
+        currentFromSource = false;
+        cursor = -1;
+        cursorSong = null;
+        history.clear();
+        forward.clear();
+        if (shuffle != null) {
+            shuffle = new LazyShuffle(random, -1);
+        }
+    }
+
+    private Song moveTo(int index) {
+        if (source.get(index) != current) {
+            pushHistory(); // replaying the current song (e.g. on loop) is not a new history entry
+        }
+        cursor = index;
+        cursorSong = source.get(index);
+        current = cursorSong;
+        currentFromSource = true;
+        return current;
+    }
+
+    /*
+     * Make song current again; hint is its source index when it was played, -1 if it was not
+     * played from the source
+     */
+    private void restore(Song song, int hint) {
+        int index = hint >= 0 ? indexOf(song, hint) : -1;
+        if (index >= 0) {
+            cursor = index;
+            cursorSong = song;
+        }
+        current = song;
+        currentFromSource = index >= 0;
+    }
+
+    private void pushHistory() {
+        if (current != null) {
+            history.push(current, currentFromSource ? cursor : -1);
+        }
+    }
+
+    /*
+     * Make sure cursor still points at cursorSong after edits to the source and return it.
+     * If that song was removed, the cursor moves to just before the song that took its place.
+     */
+    private int syncCursor() {
+        if (cursor < 0 || (cursor < source.size() && source.get(cursor) == cursorSong)) {
+            return cursor;
+        }
+        int index = indexOf(cursorSong, -1);
+        if (index >= 0) {
+            cursor = index;
+        } else {
+            cursor = Math.min(cursor, source.size()) - 1;
+            cursorSong = cursor >= 0 ? source.get(cursor) : null;
+            currentFromSource = false;
+        }
+        return cursor;
+    }
+
+    /*
+     * Position of song in the source by identity, trying hint first
+     */
+    private int indexOf(Song song, int hint) {
+        if (song == null) {
+            return -1;
+        }
+        if (hint >= 0 && hint < source.size() && source.get(hint) == song) {
+            return hint;
+        }
+        for (int i = 0; i < source.size(); i++) {
+            if (source.get(i) == song) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Bounded stack of songs with the source index each was played at; pushing onto a full
+     * stack drops its oldest entry
+     */
+    private static final class SongStack {
+
+        private final Song[] songs = new Song[HISTORY_LIMIT]; // ring buffer
+        private final int[] indexes = new int[HISTORY_LIMIT]; // source index of each song, -1 if none
+        private int end; // slot after the top entry
+        private int size;
+
+        void push(Song song, int index) {
+            songs[end] = song;
+            indexes[end] = index;
+            end = (end + 1) % HISTORY_LIMIT;
+            size = Math.min(size + 1, HISTORY_LIMIT);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        Song peekSong() {
+            return songs[(end + HISTORY_LIMIT - 1) % HISTORY_LIMIT];
+        }
+
+        int peekIndex() {
+            return indexes[(end + HISTORY_LIMIT - 1) % HISTORY_LIMIT];
+        }
+
+        void pop() {
+            end = (end + HISTORY_LIMIT - 1) % HISTORY_LIMIT;
+            songs[end] = null;
+            size--;
+        }
+
+        void clear() {
+            Arrays.fill(songs, null);
+            end = 0;
+            size = 0;
+        }
+    }
+}
@@ -24,12 +24,7 @@ public class PlaylistListCell extends ListCell<Playlist> {
                 setStyle("-fx-font-weight: bold;");
             } else {
                 setStyle(null);
-                String displayText = String.format("%s (%d songs, %s)", 
-                    playlist.getName(),
-                    playlist.getSongCount(),
-                    playlist.getFormattedDuration()
-                );
-                setText(displayText);
+                setText(playlist.getDisplayText());
             }
         }
     }
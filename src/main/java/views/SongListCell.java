@@ -17,12 +17,8 @@ public class SongListCell extends ListCell<Song> {
             setText(null);
             setGraphic(null);
         } else {
-            String displayText = String.format("%s - %s (%s)", 
-                song.getTitle(),
-                song.getArtist().getName(),
-                song.getFormattedDuration()
-            );
-            setText(displayText);
+            // Cached on the song, so reusing cells while scrolling does not allocate
+            setText(song.getDisplayText());
         }
     }
 }
\ No newline at end of file
@@ -44,4 +44,22 @@ public class AudioPlayerTest {
         boolean ok = p.playSong(s);
         assertFalse(ok, "Playing a missing file should return false");
     }
+
+    @Test
+    public void positionUpdatesSlowDownWhileHidden() {
+        AudioPlayer p = new AudioPlayer();
+        assertEquals(100, p.nextTickMillis());
+        p.setUiVisible(false);
+        assertEquals(1000, p.nextTickMillis());
+        p.setPositionUpdateIntervals(250, 2000);
+        assertEquals(2000, p.nextTickMillis());
+        p.setUiVisible(true);
+        assertEquals(250, p.nextTickMillis());
+        // Rates are clamped; a hidden UI never updates faster than a visible one
+        p.setPositionUpdateIntervals(0, 5);
+        assertEquals(10, p.nextTickMillis());
+        p.setUiVisible(false);
+        assertEquals(10, p.nextTickMillis());
+        p.shutdown();
+    }
 }
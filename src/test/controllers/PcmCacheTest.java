@@ -0,0 +1,110 @@
+package controllers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Path;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PcmCacheTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44_100, 16, 2, true, false);
+
+    @TempDir
+    Path dir;
+
+    /*
+     * Write a WAV file of the given number of bytes of PCM, filled with a pattern based on seed
+     */
+    private File wav(String name, int bytes, int seed) throws Exception {
+        byte[] pcm = new byte[bytes];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (byte) (i * 31 + seed);
+        }
+        File file = dir.resolve(name).toFile();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), FORMAT, bytes / FORMAT.getFrameSize()),
+                AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+
+    private static byte[] readAll(AudioInputStream stream) throws Exception {
+        byte[] data = new byte[(int) (stream.getFrameLength() * stream.getFormat().getFrameSize())];
+        int off = 0;
+        int n;
+        while (off < data.length && (n = stream.read(data, off, data.length - off)) > 0) {
+            off += n;
+        }
+        assertEquals(-1, stream.read(new byte[4], 0, 4));
+        return data;
+    }
+
+    @Test
+    public void cachedTrackReadsLikeTheFileAndSeeksByFrame() throws Exception {
+        File file = wav("track.wav", 3_000_000, 1); // spans several direct buffers
+        PcmCache cache = new PcmCache(64L << 20);
+        assertNull(cache.open(file));
+        assertTrue(cache.loadNow(file));
+
+        byte[] decoded = readAll(StreamingPlayback.decodePcmStream(file));
+        AudioInputStream cached = cache.open(file);
+        assertNotNull(cached);
+        assertTrue(FORMAT.matches(cached.getFormat()));
+        assertEquals(decoded.length / 4, cached.getFrameLength());
+        assertArrayEquals(decoded, readAll(cached));
+        assertEquals(3_000_000, cache.getSizeBytes());
+
+        AudioInputStream seeking = cache.open(file);
+        assertEquals(2_000_000, seeking.skip(2_000_000));
+        byte[] tail = new byte[1000];
+        assertEquals(1000, seeking.read(tail, 0, tail.length));
+        for (int i = 0; i < tail.length; i++) {
+            assertEquals(decoded[2_000_000 + i], tail[i]);
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedTracksAreEvictedAndLargeOnesSkipped() throws Exception {
+        File first = wav("first.wav", 400_000, 1);
+        File second = wav("second.wav", 400_000, 2);
+        File third = wav("third.wav", 400_000, 3);
+        File huge = wav("huge.wav", 600_000, 4);
+        PcmCache cache = new PcmCache(1_000_000);
+
+        assertTrue(cache.loadNow(first));
+        assertTrue(cache.loadNow(second));
+        assertNotNull(cache.open(first)); // first is now more recently used than second
+        assertTrue(cache.loadNow(third));
+
+        assertTrue(cache.contains(first));
+        assertFalse(cache.contains(second));
+        assertTrue(cache.contains(third));
+        assertEquals(800_000, cache.getSizeBytes());
+        assertFalse(cache.loadNow(huge), "More than half the limit is never cached");
+        assertEquals(800_000, cache.getSizeBytes());
+    }
+
+    @Test
+    public void changedFilesAreNotServedFromTheCache() throws Exception {
+        File file = wav("track.wav", 40_000, 1);
+        PcmCache cache = new PcmCache(1 << 20);
+        assertTrue(cache.loadNow(file));
+        long modified = file.lastModified();
+
+        wav("track.wav", 40_000, 2);
+        file.setLastModified(modified + 2000);
+        assertNull(cache.open(file));
+        assertFalse(cache.loadNow(dir.resolve("missing.wav").toFile()));
+    }
+}
@@ -0,0 +1,65 @@
+package controllers;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class PcmRingBufferTest {
+
+    @Test
+    public void streamsMoreDataThanCapacityInOrder() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(64);
+        byte[] source = new byte[10_000];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (byte) i;
+        }
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (int off = 0; off < source.length; off += 100) {
+                    ring.write(source, off, Math.min(100, source.length - off));
+                }
+            } catch (InterruptedException ignored) {
+            }
+            ring.finish();
+        });
+        writer.start();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte[] chunk = new byte[48];
+        int n;
+        while ((n = ring.read(chunk, 0, chunk.length, 4)) >= 0) {
+            assertTrue(n % 4 == 0, "Reads should be frame aligned");
+            received.write(chunk, 0, n);
+        }
+        writer.join();
+        assertArrayEquals(source, received.toByteArray());
+    }
+
+    @Test
+    public void closeWakesBlockedWriter() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        int[] result = new int[1];
+        Thread writer = new Thread(() -> {
+            try {
+                result[0] = ring.write(new byte[32], 0, 32);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        writer.start();
+        while (ring.available() < 8) {
+            Thread.sleep(1);
+        }
+        ring.close();
+        writer.join(1000);
+        assertEquals(-1, result[0]);
+        assertEquals(-1, ring.read(new byte[8], 0, 8, 1));
+
+        ring.reset();
+        assertEquals(4, ring.write(new byte[4], 0, 4));
+        assertEquals(4, ring.read(new byte[8], 0, 8, 2));
+    }
+}
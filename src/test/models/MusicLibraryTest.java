@@ -1,8 +1,23 @@
 package models;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -59,4 +74,331 @@ public class MusicLibraryTest {
 
         assertEquals(120, lib.getTotalDurationSeconds());
     }
+
+    @Test
+    public void addSong_rejectsDuplicatesByPathAndMetadata() {
+        Artist artist = new Artist("Dup Artist");
+        Song s1 = new Song("Same", artist);
+        s1.setFilePath("/music/same.mp3");
+        Song samePath = new Song("Different", artist);
+        samePath.setFilePath("/music/same.mp3");
+        Song sameMetadata = new Song("Same", new Artist("Dup Artist"));
+
+        lib.addSong(s1);
+        lib.addSong(samePath);
+        lib.addSong(sameMetadata);
+
+        assertEquals(1, lib.getTotalSongCount());
+        assertEquals(1, lib.getTotalArtistCount());
+        assertSame(s1, lib.findSongByPath("/music/same.mp3"));
+        assertSame(artist, lib.findArtist("Dup Artist"));
+    }
+
+    @Test
+    public void reindexSong_updatesLookupsAfterEdit() {
+        Artist artist = new Artist("Edit Artist");
+        Song song = new Song("Before", artist);
+        song.setFilePath("/music/before.mp3");
+        lib.addSong(song);
+
+        song.setTitle("After");
+        song.setFilePath("/music/after.mp3");
+        lib.reindexSong(song);
+
+        assertSame(song, lib.findSongByPath("/music/after.mp3"));
+        assertNull(lib.findSongByPath("/music/before.mp3"));
+
+        // The old title is free again, the new one is taken
+        lib.addSong(new Song("Before", artist));
+        lib.addSong(new Song("After", artist));
+        assertEquals(2, lib.getTotalSongCount());
+
+        lib.removeSong(song);
+        assertEquals(1, lib.getTotalSongCount());
+        assertNull(lib.findSongByPath("/music/after.mp3"));
+    }
+
+    @Test
+    public void searchSongs_matchesSubstringsAcrossFieldsAndEdits() {
+        Artist artist = new Artist("The Band");
+        Album album = new Album("Greatest Hits Live", artist);
+        Song s1 = new Song("Opening Night", artist, album, 200);
+        s1.setGenre("Rock");
+        Song s2 = new Song("Closing Time", new Artist("Solo"));
+        lib.addSong(s1);
+        lib.addSong(s2);
+
+        assertEquals(List.of(s1), lib.searchSongs("hits li"));
+        assertEquals(List.of(s1), lib.searchSongs("ROC"));
+        assertEquals(List.of(s1, s2), lib.searchSongs("in"));
+        assertTrue(lib.searchSongs("jazz").isEmpty());
+
+        s2.setGenre("Jazz");
+        lib.reindexSong(s2);
+        assertEquals(List.of(s2), lib.searchSongs("jazz"));
+
+        lib.removeSong(s1);
+        assertTrue(lib.searchSongs("night").isEmpty());
+    }
+
+    @Test
+    public void browseQueries_followAddsEditsAndRemovals() {
+        Artist a = new Artist("Browse A");
+        Artist b = new Artist("Browse B");
+        Album albumA = new Album("First", a);
+        Song s1 = new Song("One", a, albumA, 100);
+        s1.setGenre("Rock");
+        Song s2 = new Song("Two", a, albumA, 100);
+        s2.setGenre("rock");
+        Song s3 = new Song("Three", b);
+        s3.setGenre("Jazz");
+        albumA.addSong(s1);
+        albumA.addSong(s2);
+        lib.addSong(s1);
+        lib.addSong(s2);
+        lib.addSong(s3);
+
+        assertEquals(List.of(s1, s2), lib.getSongsByArtist(a));
+        assertEquals(List.of(s1, s2), lib.getSongsByAlbum(albumA));
+        assertEquals(List.of(s1, s2), lib.getSongsByGenre("ROCK"));
+        assertEquals(List.of(albumA), lib.getAlbumsByArtist(a));
+        assertEquals(List.of("Jazz", "Rock", "rock"), lib.getAllGenres());
+
+        // Moving the first song to another artist keeps library order in the new artist's list
+        lib.editSong(s1, null, "Browse B", null, "Jazz", null, null);
+        assertEquals(List.of(s2), lib.getSongsByArtist(a));
+        assertEquals(List.of(s1, s3), lib.getSongsByArtist(b));
+        assertEquals(List.of(s1, s3), lib.getSongsByGenre("jazz"));
+        assertEquals(List.of("Jazz", "rock"), lib.getAllGenres());
+
+        // Removing the last song of an artist drops the artist; the album keeps its other song
+        lib.removeSong(s2);
+        assertTrue(lib.getSongsByArtist(a).isEmpty());
+        assertNull(lib.findArtist("Browse A"));
+        assertEquals(List.of(s1), lib.getSongsByAlbum(albumA));
+        lib.removeSong(s1);
+        assertTrue(lib.getAlbumsByArtist(a).isEmpty());
+        assertTrue(lib.getSongsByGenre("rock").isEmpty());
+    }
+
+    @Test
+    public void concurrentReadersSeeConsistentStateWhileImporting() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        AtomicBoolean done = new AtomicBoolean();
+        try {
+            Future<?> writer = pool.submit(() -> {
+                for (int batch = 0; batch < 50; batch++) {
+                    List<Song> songs = new ArrayList<>();
+                    Artist artist = new Artist("Concurrent " + batch);
+                    for (int i = 0; i < 20; i++) {
+                        Song song = new Song("Track " + i, artist);
+                        song.setDurationSeconds(10);
+                        songs.add(song);
+                    }
+                    lib.addSongs(songs);
+                }
+                done.set(true);
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                readers.add(pool.submit(() -> {
+                    while (!done.get()) {
+                        // Batches are atomic: a reader never sees part of one
+                        int count = lib.read(() -> {
+                            int songs = lib.getTotalSongCount();
+                            assertEquals(songs, lib.getAllSongs().size());
+                            assertEquals(songs * 10, lib.getTotalDurationSeconds());
+                            return songs;
+                        });
+                        assertEquals(0, count % 20);
+                        lib.searchSongs("track");
+                        lib.getAllArtists().forEach(lib::getSongsByArtist);
+                    }
+                    return null;
+                }));
+            }
+            writer.get(30, TimeUnit.SECONDS);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1000, lib.getTotalSongCount());
+        assertEquals(50, lib.getTotalArtistCount());
+    }
+
+    @Test
+    public void readViews_areSharedUntilChangedAndReadOnly() {
+        Artist artist = new Artist("Views");
+        Album album = new Album("Views Album", artist);
+        Song s1 = new Song("One", artist, album, 60);
+        Song s2 = new Song("Two", artist, album, 60);
+        album.addSong(s1);
+        album.addSong(s2);
+        lib.addSong(s1);
+        lib.addSong(s2);
+
+        List<Song> first = lib.getAllSongs();
+        assertSame(first, lib.getAllSongs());
+        assertSame(s2, lib.getSong(1));
+        assertEquals(1, lib.indexOfSong(s2));
+        assertThrows(UnsupportedOperationException.class, () -> first.remove(0));
+
+        lib.removeSong(s1);
+        assertNotSame(first, lib.getAllSongs());
+        assertEquals(List.of(s1, s2), first, "Earlier snapshots are not changed by later writes");
+        assertEquals(List.of(s2), lib.getAllSongs());
+
+        // Playlist and album views follow their owner without copying
+        Playlist playlist = new Playlist("Views");
+        List<Song> view = playlist.getSongs();
+        playlist.addSong(s2);
+        assertEquals(List.of(s2), view);
+        assertEquals(0, playlist.indexOfSong(s2));
+        assertThrows(UnsupportedOperationException.class, () -> view.add(s1));
+        assertSame(s2, album.getSong(0));
+        assertSame(album, artist.getAlbum(0));
+    }
+
+    @Test
+    public void searchSongsWithLimit_returnsEarliestMatchesAndStopsWhenInterrupted() {
+        Artist artist = new Artist("Limit");
+        List<Song> added = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Song song = new Song((i % 2 == 0 ? "even " : "odd ") + i, artist);
+            added.add(song);
+            lib.addSong(song);
+        }
+
+        List<Song> firstThree = lib.searchSongs("even", 3);
+        assertEquals(List.of(added.get(0), added.get(2), added.get(4)), firstThree);
+        assertEquals(lib.searchSongs("even"), lib.searchSongs("even", 1000));
+        assertEquals(List.of(added.get(0), added.get(1)), lib.searchSongs(" ", 2), "Scan fallback keeps library order");
+
+        Thread.currentThread().interrupt();
+        try {
+            assertTrue(lib.searchSongs("limit", 10).isEmpty());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void displayText_isCachedUntilMetadataChanges() {
+        Artist artist = new Artist("Display");
+        Song song = new Song("Tune", artist, null, 65);
+        String text = song.getDisplayText();
+        assertEquals("Tune - Display (1:05)", text);
+        assertSame(text, song.getDisplayText());
+
+        song.setDurationSeconds(3600 + 7);
+        assertEquals("Tune - Display (60:07)", song.getDisplayText());
+        artist.setName("Renamed");
+        assertEquals("Tune - Renamed (60:07)", song.getDisplayText());
+
+        Playlist playlist = new Playlist("Mix");
+        playlist.addSong(song);
+        assertEquals("Mix (1 songs, 1:00:07)", playlist.getDisplayText());
+        assertSame(playlist.getDisplayText(), playlist.getDisplayText());
+        playlist.removeSong(song);
+        assertEquals("Mix (0 songs, 0:00)", playlist.getDisplayText());
+    }
+
+    @Test
+    public void ids_areAssignedOnceAndKeptWhenFree() {
+        MusicLibrary lib = MusicLibrary.getInstance();
+        lib.clearLibrary();
+        Artist artist = new Artist("Ids");
+        Song first = new Song("First", artist);
+        Song second = new Song("Second", artist);
+        lib.addSong(first);
+        lib.addSong(second);
+
+        assertTrue(first.getId() > 0);
+        assertNotEquals(first.getId(), second.getId());
+        assertTrue(artist.getId() > 0);
+        assertSame(second, lib.findSongById(second.getId()));
+        assertSame(artist, lib.findArtistById(artist.getId()));
+
+        // A song read back with an id keeps it; one whose id is taken gets a new one
+        Song loaded = new Song("Loaded", artist);
+        loaded.setId(1000);
+        lib.addSong(loaded);
+        assertEquals(1000, loaded.getId());
+        Song clash = new Song("Clash", artist);
+        clash.setId(first.getId());
+        lib.addSong(clash);
+        assertEquals(1001, clash.getId());
+        assertSame(first, lib.findSongById(first.getId()));
+
+        int id = first.getId();
+        lib.removeSong(first);
+        assertNull(lib.findSongById(id));
+        lib.clearLibrary();
+    }
+
+    @Test
+    public void removeSong_byAnEqualCopyCleansUpTheLibraryInstance() {
+        Artist artist = new Artist("Copy Artist");
+        Album album = new Album("Copy Album", artist);
+        Song song = new Song("Copied", artist, album, 60);
+        album.addSong(song);
+        lib.addSong(song);
+        Playlist playlist = new Playlist("Copies");
+        playlist.addSong(song);
+        lib.addPlaylist(playlist);
+
+        // e.g. read back from a file: equal, but with its own album
+        Artist otherArtist = new Artist("Copy Artist");
+        Song copy = new Song("Copied", otherArtist, new Album("Copy Album", otherArtist), 60);
+        assertEquals(song, copy);
+        lib.removeSong(copy);
+
+        assertEquals(0, lib.getTotalSongCount());
+        assertEquals(0, playlist.getSongCount());
+        assertEquals(0, album.getSongCount());
+        assertEquals(0, lib.getTotalAlbumCount());
+        assertEquals(0, lib.getTotalArtistCount());
+    }
+
+    @Test
+    public void getAllSongsAndPlaylists_doNotWaitForAWriterThatLeavesThemAlone() throws Exception {
+        Artist artist = new Artist("Published");
+        Song before = new Song("Before", artist);
+        lib.addSong(before);
+        lib.addPlaylist(new Playlist("Before"));
+        assertEquals(List.of(before), lib.getAllSongs());
+        assertEquals(1, lib.getAllPlaylists().size());
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> write = writer.submit(() -> lib.update(() -> {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                lib.addSong(new Song("During", artist));
+                lib.addPlaylist(new Playlist("During"));
+            }));
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            // Answered while the write lock is held
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals(List.of(before), lib.getAllSongs());
+                assertEquals(1, lib.getAllPlaylists().size());
+                assertNotNull(lib.findPlaylist("Before"));
+            });
+            release.countDown();
+            write.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            writer.shutdownNow();
+        }
+        assertEquals(2, lib.getAllSongs().size());
+        assertEquals(2, lib.getAllPlaylists().size());
+        lib.clearLibrary();
+    }
 }
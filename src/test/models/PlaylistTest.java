@@ -0,0 +1,101 @@
+package models;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class PlaylistTest {
+
+    private static List<Song> songs(int count) {
+        Artist artist = new Artist("Bulk");
+        List<Song> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(new Song("Track " + i, artist));
+        }
+        return list;
+    }
+
+    @Test
+    public void membershipIsByIdentityAndRejectsDuplicates() {
+        List<Song> list = songs(3);
+        Playlist playlist = new Playlist("Mix");
+        playlist.addSong(list.get(0));
+        playlist.addSong(list.get(0));
+        playlist.addSong(0, list.get(1));
+        playlist.addSong(5, list.get(2)); // out of range, not added
+
+        assertEquals(Arrays.asList(list.get(1), list.get(0)), playlist.getSongs());
+        assertFalse(playlist.containsSong(list.get(2)));
+        assertEquals(1, playlist.indexOfSong(list.get(0)));
+
+        // An equal copy (e.g. read back from a file) is a different song
+        Song copy = new Song("Track 0", list.get(0).getArtist());
+        assertEquals(list.get(0), copy);
+        assertFalse(playlist.containsSong(copy));
+        assertEquals(-1, playlist.indexOfSong(copy));
+        playlist.removeSong(copy);
+        assertEquals(2, playlist.getSongCount());
+
+        playlist.removeSong(0);
+        assertFalse(playlist.containsSong(list.get(1)));
+        playlist.addSong(list.get(1));
+        assertEquals(Arrays.asList(list.get(0), list.get(1)), playlist.getSongs());
+    }
+
+    @Test
+    public void bulkOperationsKeepOrderAndMembership() {
+        List<Song> list = songs(10);
+        Playlist playlist = new Playlist("Bulk");
+        playlist.addSong(list.get(3));
+        LocalDateTime before = LocalDateTime.of(2000, 1, 1, 0, 0);
+        playlist.setLastModified(before);
+
+        assertTrue(playlist.addAll(list));
+        assertEquals(10, playlist.getSongCount());
+        assertEquals(list.get(3), playlist.getSong(0));
+        assertNotEquals(before, playlist.getLastModified());
+        playlist.setLastModified(before);
+        assertFalse(playlist.addAll(list.subList(0, 5)), "Nothing new to add");
+        assertEquals(before, playlist.getLastModified());
+
+        assertTrue(playlist.removeAll(Arrays.asList(list.get(0), list.get(9), list.get(3))));
+        assertEquals(7, playlist.getSongCount());
+        assertFalse(playlist.containsSong(list.get(9)));
+        assertFalse(playlist.removeAll(Arrays.asList(list.get(0))));
+
+        assertTrue(playlist.retainAll(Arrays.asList(list.get(6), list.get(2), list.get(0))));
+        assertEquals(Arrays.asList(list.get(2), list.get(6)), playlist.getSongs());
+        assertFalse(playlist.containsSong(list.get(5)));
+        playlist.addSong(list.get(5));
+        assertEquals(2, playlist.indexOfSong(list.get(5)));
+    }
+
+    @Test
+    public void removingALibrarySongRemovesItFromPlaylists() {
+        MusicLibrary lib = MusicLibrary.getInstance();
+        lib.clearLibrary();
+        List<Song> list = songs(20_000);
+        lib.addSongs(list);
+        Playlist large = new Playlist("Large");
+        for (Song song : list) {
+            large.addSong(song); // one at a time stays linear overall
+        }
+        Playlist small = new Playlist("Small");
+        small.addSong(list.get(7));
+        lib.addPlaylist(large);
+        lib.addPlaylist(small);
+
+        lib.removeSong(list.get(7));
+        assertEquals(19_999, large.getSongCount());
+        assertFalse(large.containsSong(list.get(7)));
+        assertEquals(0, small.getSongCount());
+        lib.clearLibrary();
+    }
+}
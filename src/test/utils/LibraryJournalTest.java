@@ -0,0 +1,75 @@
+package utils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+import models.MusicLibrary;
+import models.Playlist;
+import models.Song;
+
+public class LibraryJournalTest {
+
+    @Test
+    public void testRecoverReplaysJournalAfterCrash() throws Exception {
+        File dir = Files.createTempDirectory("journal").toFile();
+        dir.deleteOnExit();
+        File snapshot = new File(dir, "music-library.bin");
+        File journalFile = new File(dir, "library.journal");
+
+        MusicLibrary lib = MusicLibrary.getInstance();
+        lib.clearLibrary();
+        Song a = new Song("Alpha", null);
+        a.setFilePath(new File(dir, "a.mp3").getAbsolutePath());
+        Song b = new Song("Beta", null);
+        b.setFilePath(new File(dir, "b.mp3").getAbsolutePath());
+        lib.addSong(a);
+        lib.addSong(b);
+        BinaryLibraryIO.save(lib, snapshot, 0);
+
+        LibraryJournal journal = new LibraryJournal(lib, snapshot, journalFile);
+        Playlist playlist = new Playlist("Mix");
+        journal.createPlaylist(playlist);
+        journal.addSongToPlaylist(playlist, a);
+        journal.addSongToPlaylist(playlist, b);
+        journal.moveSongInPlaylist(playlist, 1, 0);
+        journal.editSong(b, "Beta (Live)", "Someone", null, "Jazz", 7, null);
+        assertSame(b, playlist.getSongs().get(0));
+
+        // Crash mid-write: the last line is incomplete and the snapshot is stale
+        try (FileWriter out = new FileWriter(journalFile, true)) {
+            out.write("{\"seq\":6,\"op\":\"PLAYL");
+        }
+        lib.clearLibrary();
+
+        long seq = BinaryLibraryIO.load(lib, snapshot);
+        assertEquals(0, seq);
+        assertEquals(0, lib.getAllPlaylists().size());
+        LibraryJournal recovered = new LibraryJournal(lib, snapshot, journalFile);
+        assertEquals(5, recovered.recover(seq));
+        assertEquals(5, recovered.getLastSequence());
+
+        Playlist replayed = lib.findPlaylist("Mix");
+        assertNotNull(replayed);
+        assertEquals(2, replayed.getSongCount());
+        assertEquals("Beta (Live)", replayed.getSongs().get(0).getTitle());
+        assertEquals("Someone", replayed.getSongs().get(0).getArtist().getName());
+        assertEquals(7, replayed.getSongs().get(0).getTrackNumber());
+        assertEquals("Alpha", replayed.getSongs().get(1).getTitle());
+
+        // Closing folds everything into the snapshot and removes the journal files
+        recovered.close();
+        assertFalse(journalFile.exists());
+        assertEquals(0, dir.list((d, name) -> name.startsWith("library.journal")).length);
+        lib.clearLibrary();
+        assertEquals(5, BinaryLibraryIO.load(lib, snapshot));
+        assertEquals(2, lib.findPlaylist("Mix").getSongCount());
+        lib.clearLibrary();
+    }
+}
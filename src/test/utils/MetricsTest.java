@@ -0,0 +1,109 @@
+package utils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import models.MusicLibrary;
+import models.Song;
+
+public class MetricsTest {
+
+    @Test
+    public void histogramPercentilesAreWithinBucketPrecision() {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram histogram = metrics.histogram("test_values", "Test values");
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(50_005_000L, histogram.getSum());
+        assertEquals(10_000, histogram.getMax());
+        assertEquals(5_000, histogram.percentile(0.5), 5_000 * 0.07);
+        assertEquals(9_900, histogram.percentile(0.99), 9_900 * 0.07);
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(10_000, histogram.percentile(1), 10_000 * 0.07);
+        assertEquals(0, metrics.histogram("test_empty", "Nothing recorded").percentile(0.5));
+
+        for (long value : new long[] { 0, 7, 8, 15, 16, 1_000_003, Long.MAX_VALUE }) {
+            int bucket = Metrics.Histogram.bucketOf(value);
+            assertTrue(Metrics.Histogram.lowerBound(bucket) <= value);
+            assertTrue(value == Long.MAX_VALUE || Metrics.Histogram.lowerBound(bucket + 1) > value);
+        }
+    }
+
+    @Test
+    public void registryReturnsTheSameMetricPerName() {
+        Metrics metrics = new Metrics();
+        Metrics.Counter counter = metrics.counter("test_events_total", "Events");
+        counter.increment();
+        counter.add(2);
+
+        assertSame(counter, metrics.counter("test_events_total", "Events"));
+        assertEquals(3, counter.getCount());
+        assertThrows(IllegalArgumentException.class, () -> metrics.timer("test_events_total", "Events"));
+    }
+
+    @Test
+    public void exportsPrometheusTextAndJson() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.counter("test_saves_total", "Saves").add(4);
+        metrics.gauge("test_songs", "Songs", () -> 12);
+        Metrics.Timer timer = metrics.timer("test_save_seconds", "Save time");
+        timer.record(250_000_000L);
+        timer.record(750_000_000L);
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE test_saves_total counter\ntest_saves_total 4\n"), text);
+        assertTrue(text.contains("# TYPE test_songs gauge\ntest_songs 12\n"), text);
+        assertTrue(text.contains("# TYPE test_save_seconds summary\n"), text);
+        assertTrue(text.contains("test_save_seconds_sum 1\n"), text);
+        assertTrue(text.contains("test_save_seconds_count 2\n"), text);
+        assertTrue(text.contains("test_save_seconds{quantile=\"0.99\"} 0.7"), text);
+
+        File dir = Files.createTempDirectory("metrics").toFile();
+        dir.deleteOnExit();
+        File jsonFile = new File(dir, "metrics.json");
+        metrics.dump(jsonFile);
+        JsonNode json = new ObjectMapper().readTree(jsonFile);
+        assertEquals(4, json.get("test_saves_total").asLong());
+        assertEquals(2, json.get("test_save_seconds").get("count").asLong());
+        assertEquals(0.75, json.get("test_save_seconds").get("max").asDouble(), 1e-9);
+
+        File textFile = new File(dir, "metrics.prom");
+        metrics.startDump(textFile, 10_000);
+        metrics.stopDump();
+        assertEquals(metrics.toPrometheus(), new String(Files.readAllBytes(textFile.toPath()), StandardCharsets.UTF_8));
+        jsonFile.delete();
+        textFile.delete();
+    }
+
+    @Test
+    public void librarySearchesAndMutationsAreCounted() {
+        MusicLibrary lib = MusicLibrary.getInstance();
+        lib.clearLibrary();
+        Metrics.Counter added = Metrics.getInstance().counter("library_songs_added_total", "");
+        Metrics.Timer searches = Metrics.getInstance().timer("library_search_seconds", "");
+        long addedBefore = added.getCount();
+        long searchesBefore = searches.getCount();
+
+        lib.addSong(new Song("Metrics One", null));
+        lib.addSong(new Song("Metrics Two", null));
+        lib.searchSongs("metrics");
+        lib.searchSongs("metrics", 1);
+
+        assertEquals(addedBefore + 2, added.getCount());
+        assertEquals(searchesBefore + 2, searches.getCount());
+        assertTrue(Metrics.getInstance().toPrometheus().contains("\nlibrary_songs 2\n"));
+        lib.clearLibrary();
+    }
+}
@@ -0,0 +1,208 @@
+package utils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import models.MusicLibrary;
+import models.Song;
+
+public class MusicImporterTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void setup() {
+        MusicLibrary.getInstance().clearLibrary();
+    }
+
+    @Test
+    public void importFromDirectory_parallelImportKeepsWalkOrder() throws Exception {
+        // Untagged files fall back to a title taken from the file name
+        Files.createDirectories(dir.resolve("a"));
+        Files.createDirectories(dir.resolve("b"));
+        for (int i = 0; i < 20; i++) {
+            Files.write(dir.resolve((i % 2 == 0 ? "a" : "b")).resolve(String.format("track%02d.mp3", i)), new byte[16]);
+        }
+        Files.write(dir.resolve("notes.txt"), new byte[16]);
+
+        ImportResult sequential = MusicImporter.importFromDirectoryResult(dir.toFile(), 1);
+        MusicLibrary.getInstance().clearLibrary();
+        ImportResult parallel = MusicImporter.importFromDirectoryResult(dir.toFile(), 4);
+
+        assertEquals(20, parallel.successCount());
+        assertEquals(0, parallel.failureCount());
+        assertEquals(titles(sequential), titles(parallel));
+        assertEquals(20, MusicLibrary.getInstance().getTotalSongCount());
+    }
+
+    @Test
+    public void importAudioFiles_skipsNonAudioFiles() throws Exception {
+        File song = Files.write(dir.resolve("single.wav"), new byte[16]).toFile();
+        File text = Files.write(dir.resolve("readme.txt"), new byte[16]).toFile();
+
+        ImportResult result = MusicImporter.importAudioFiles(new File[] { song, text }, 2);
+        assertEquals(1, result.successCount());
+        assertEquals("single", result.getSuccesses().get(0).getTitle());
+    }
+
+    @Test
+    public void rescanDirectory_parsesOnlyNewAndChangedFilesAndDropsDeleted() throws Exception {
+        Files.write(dir.resolve("kept.mp3"), new byte[16]);
+        Path changed = Files.write(dir.resolve("changed.mp3"), new byte[16]);
+        Path deleted = Files.write(dir.resolve("deleted.mp3"), new byte[16]);
+        MusicImporter.importFromDirectoryResult(dir.toFile(), 2);
+        MusicLibrary lib = MusicLibrary.getInstance();
+        assertEquals(3, lib.getTotalSongCount());
+        Song changedSong = lib.findSongByPath(changed.toFile().getAbsolutePath());
+
+        Files.write(changed, new byte[32]);
+        Files.delete(deleted);
+        Files.write(dir.resolve("added.mp3"), new byte[16]);
+
+        ImportResult result = MusicImporter.rescanDirectory(dir.toFile(), 2);
+        assertEquals(1, result.unchangedCount());
+        assertEquals(2, result.successCount());
+        assertEquals(1, result.removedCount());
+        assertEquals(3, lib.getTotalSongCount());
+        assertSame(changedSong, lib.findSongByPath(changed.toFile().getAbsolutePath()));
+        assertEquals(32, changedSong.getFileSizeBytes());
+        assertNull(lib.findSongByPath(deleted.toFile().getAbsolutePath()));
+    }
+
+    @Test
+    public void startImport_reportsProgressAndPublishesCommittedSongs() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            Files.write(dir.resolve(String.format("bg%02d.mp3", i)), new byte[16]);
+        }
+        List<Song> published = new CopyOnWriteArrayList<>();
+        ImportProgress[] finished = new ImportProgress[1];
+        ImportJob job = MusicImporter.startImport(new File[] { dir.toFile() }, new ImportJob.Listener() {
+            @Override
+            public void onProgress(ImportProgress progress) {
+            }
+
+            @Override
+            public void onSongsCommitted(List<Song> songs) {
+                published.addAll(songs);
+            }
+
+            @Override
+            public void onFinished(ImportResult result, ImportProgress progress) {
+                finished[0] = progress;
+            }
+        });
+
+        ImportResult result = job.await();
+        assertEquals(30, result.successCount());
+        assertEquals(result.getSuccesses(), published);
+        assertTrue(job.isDone());
+        ImportProgress progress = job.getProgress();
+        assertEquals(30, progress.getFilesScanned());
+        assertEquals(30, progress.getFilesParsed() + progress.getFilesFailed());
+        assertEquals(30, progress.getSongsCommitted());
+    }
+
+    @Test
+    public void startImport_pauseHoldsCommitsAndCancelStopsTheImport() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            Files.write(dir.resolve(String.format("held%03d.mp3", i)), new byte[16]);
+        }
+        ImportJob job = MusicImporter.startImport(new File[] { dir.toFile() }, null);
+        job.pause();
+        Thread.sleep(200);
+        int committed = MusicLibrary.getInstance().getTotalSongCount();
+        Thread.sleep(200);
+        assertEquals(committed, MusicLibrary.getInstance().getTotalSongCount(), "Nothing is committed while paused");
+
+        job.cancel();
+        ImportResult result = job.await();
+        assertTrue(job.isCancelled());
+        assertEquals(committed, MusicLibrary.getInstance().getTotalSongCount());
+        assertEquals(committed, result.successCount());
+    }
+
+    @Test
+    public void startImport_publishesOnlySongsTheLibraryAccepted() throws Exception {
+        // The same untagged track in two folders has the same title, artist and album
+        for (String folder : new String[] { "one", "two" }) {
+            Files.createDirectories(dir.resolve(folder));
+            Files.write(dir.resolve(folder).resolve("same.mp3"), new byte[16]);
+        }
+        Files.write(dir.resolve("one").resolve("other.mp3"), new byte[16]);
+        List<Song> published = new CopyOnWriteArrayList<>();
+        ImportJob job = MusicImporter.startImport(new File[] { dir.toFile() }, new ImportJob.Listener() {
+            @Override
+            public void onProgress(ImportProgress progress) {
+            }
+
+            @Override
+            public void onSongsCommitted(List<Song> songs) {
+                published.addAll(songs);
+            }
+
+            @Override
+            public void onFinished(ImportResult result, ImportProgress progress) {
+            }
+        });
+
+        ImportResult result = job.await();
+        MusicLibrary lib = MusicLibrary.getInstance();
+        assertEquals(2, result.successCount());
+        assertEquals(1, result.duplicateCount());
+        assertEquals(2, lib.getTotalSongCount());
+        assertEquals(result.getSuccesses(), published);
+        for (Song song : published) {
+            assertTrue(lib.containsSong(song));
+        }
+        assertEquals(2, published.get(0).getAlbum().getSongCount(), "The rejected copy is not on the album");
+        assertNull(MusicImporter.importAudioFile(dir.resolve("two").resolve("same.mp3").toFile()));
+    }
+
+    @Test
+    public void importJob_reportsAnImportThatThrowsAsFinished() throws Exception {
+        CountDownLatch finished = new CountDownLatch(1);
+        ImportResult[] reported = new ImportResult[1];
+        ImportJob job = new ImportJob(new ImportJob.Listener() {
+            @Override
+            public void onProgress(ImportProgress progress) {
+            }
+
+            @Override
+            public void onSongsCommitted(List<Song> songs) {
+            }
+
+            @Override
+            public void onFinished(ImportResult result, ImportProgress progress) {
+                reported[0] = result;
+                finished.countDown();
+            }
+        });
+        job.start(() -> {
+            throw new IllegalStateException("disk gone");
+        });
+
+        assertEquals("disk gone", job.await().getError());
+        assertTrue(finished.await(5, TimeUnit.SECONDS), "The listener hears about the failed import");
+        assertEquals("disk gone", reported[0].getError());
+        assertTrue(job.isDone());
+    }
+
+    private static String titles(ImportResult result) {
+        return result.getSuccesses().stream().map(Song::getTitle).collect(Collectors.joining(","));
+    }
+}
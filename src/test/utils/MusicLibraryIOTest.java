@@ -3,9 +3,13 @@ package utils;
 import java.io.File;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import org.junit.jupiter.api.Test;
 
+import models.Album;
+import models.Artist;
 import models.MusicLibrary;
+import models.Playlist;
 import models.Song;
 
 public class MusicLibraryIOTest {
@@ -30,4 +34,82 @@ public class MusicLibraryIOTest {
         MusicLibraryIO.loadLibrary(lib, tmp);
         assertEquals(1, lib.getTotalSongCount());
     }
+
+    @Test
+    public void testJsonLoadInternsArtistsAndAlbums() throws Exception {
+        MusicLibrary lib = MusicLibrary.getInstance();
+        lib.clearLibrary();
+
+        Artist artist = new Artist("Json Artist");
+        Album album = new Album("Json Album", artist);
+        lib.addSong(new Song("First", artist, album, 10));
+        lib.addSong(new Song("Second", artist, album, 20));
+
+        File tmp = File.createTempFile("musiclib", ".json");
+        tmp.deleteOnExit();
+        MusicLibraryIO.saveLibrary(lib, tmp);
+        lib.clearLibrary();
+        MusicLibraryIO.loadLibrary(lib, tmp);
+
+        assertEquals(2, lib.getTotalSongCount());
+        Song first = lib.getAllSongs().get(0);
+        Song second = lib.getAllSongs().get(1);
+        assertSame(first.getArtist(), second.getArtist());
+        assertSame(first.getAlbum(), second.getAlbum());
+        assertSame(first.getArtist(), first.getAlbum().getArtist());
+        assertEquals(2, first.getAlbum().getSongCount());
+    }
+
+    @Test
+    public void testBinarySnapshotRoundTripSharesEntities() throws Exception {
+        MusicLibrary lib = MusicLibrary.getInstance();
+        lib.clearLibrary();
+
+        Artist artist = new Artist("Binary Artist");
+        Album album = new Album("Binary Album", artist);
+        Song s1 = new Song("One", artist, album, 61);
+        s1.setGenre("Ambient");
+        Song s2 = new Song("Two", artist, album, 62);
+        album.addSong(s1);
+        album.addSong(s2);
+        lib.addSong(s1);
+        lib.addSong(s2);
+        Playlist playlist = new Playlist("Binary Playlist");
+        playlist.addSong(s2);
+        lib.addPlaylist(playlist);
+
+        // Make the ids differ from the order of the snapshot tables
+        lib.removeSong(s1);
+        lib.addSong(s1);
+        album.addSong(s1);
+        int oneId = s1.getId();
+        int twoId = s2.getId();
+        int artistId = artist.getId();
+
+        File tmp = File.createTempFile("musiclib", ".bin");
+        tmp.deleteOnExit();
+        BinaryLibraryIO.save(lib, tmp);
+        lib.clearLibrary();
+        BinaryLibraryIO.load(lib, tmp);
+
+        assertEquals(2, lib.getTotalSongCount());
+        assertEquals(1, lib.getTotalArtistCount());
+        assertEquals(1, lib.getTotalAlbumCount());
+        Song two = lib.getAllSongs().get(0);
+        Song one = lib.getAllSongs().get(1);
+        assertEquals("One", one.getTitle());
+        assertEquals(oneId, one.getId());
+        assertEquals(twoId, two.getId());
+        assertSame(one, lib.findSongById(oneId));
+        assertSame(one.getArtist(), lib.findArtistById(artistId));
+        assertSame(one.getAlbum(), lib.findAlbumById(one.getAlbum().getId()));
+        assertEquals("Ambient", one.getGenre());
+        assertEquals(62, two.getDurationSeconds());
+        assertSame(one.getArtist(), two.getArtist());
+        assertSame(one.getAlbum(), two.getAlbum());
+        assertEquals(2, one.getAlbum().getSongCount());
+        Playlist loaded = lib.getAllPlaylists().get(0);
+        assertEquals("Binary Playlist", loaded.getName());
+        assertSame(two, loaded.getSongs().get(0));
+    }
 }
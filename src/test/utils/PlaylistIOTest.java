@@ -1,15 +1,23 @@
 package utils;
 
+import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.List;
 
 import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
+import models.Album;
 import models.Artist;
+import models.MusicLibrary;
 import models.Playlist;
 import models.Song;
 
@@ -41,5 +49,70 @@ public class PlaylistIOTest {
         List<Playlist> loaded = PlaylistIO.loadPlaylists();
         assertNotNull(loaded);
         assertTrue(loaded.stream().anyMatch(pl -> "UnitTest Playlist".equals(pl.getName())), "Loaded playlists should contain the saved playlist");
+        // Songs are read back even though getSongs() is a read-only view
+        assertEquals("Test Song", loaded.get(0).getSong(0).getTitle());
+    }
+
+    @Test
+    public void librarySongsAreStoredByIdAndLoadedAsTheSameObjects() throws Exception {
+        MusicLibrary lib = MusicLibrary.getInstance();
+        lib.clearLibrary();
+        Artist artist = new Artist("Referenced Artist");
+        Album album = new Album("Referenced Album", artist);
+        Song one = new Song("Referenced One", artist, album, 100);
+        Song two = new Song("Referenced Two", artist, album, 200);
+        lib.addSong(one);
+        lib.addSong(two);
+        Song outside = new Song("Outside Song", artist);
+        Playlist first = new Playlist("First");
+        first.addAll(List.of(two, one, outside));
+        Playlist second = new Playlist("Second");
+        second.addSong(two);
+        LocalDateTime modified = LocalDateTime.of(2024, 5, 6, 7, 8, 9);
+        first.setLastModified(modified);
+
+        PlaylistIO.savePlaylists(List.of(first, second), lib);
+        String json = new String(Files.readAllBytes(Path.of("playlists.json")), StandardCharsets.UTF_8);
+        assertFalse(json.contains("Referenced Two"), "Library songs are written as ids");
+        assertTrue(json.contains("Outside Song"), "Songs outside the library are written in full");
+
+        List<Playlist> loaded = PlaylistIO.loadPlaylists(lib);
+        assertEquals(2, loaded.size());
+        Playlist loadedFirst = loaded.get(0);
+        assertEquals(3, loadedFirst.getSongCount());
+        assertSame(two, loadedFirst.getSong(0));
+        assertSame(one, loadedFirst.getSong(1));
+        assertEquals("Outside Song", loadedFirst.getSong(2).getTitle());
+        assertEquals(modified, loadedFirst.getLastModified());
+        assertSame(two, loaded.get(1).getSong(0));
+        lib.clearLibrary();
+    }
+
+    @Test
+    public void migratePlaylists_movesThemIntoTheSnapshotAndRetiresTheFile() throws Exception {
+        MusicLibrary lib = MusicLibrary.getInstance();
+        lib.clearLibrary();
+        Song song = new Song("Migrated Song", new Artist("Migrated Artist"));
+        lib.addSong(song);
+        Playlist kept = new Playlist("Kept");
+        lib.addPlaylist(kept); // already in the snapshot, so newer than the file
+        Playlist old = new Playlist("Old");
+        old.addSong(song);
+        PlaylistIO.savePlaylists(List.of(old, new Playlist("Kept")), lib);
+
+        File dir = Files.createTempDirectory("migrate").toFile();
+        File snapshot = new File(dir, "music-library.bin");
+        LibraryJournal journal = new LibraryJournal(lib, snapshot, new File(dir, "library.journal"));
+        assertTrue(PlaylistIO.migratePlaylists(lib, journal));
+        assertFalse(Files.exists(Path.of("playlists.json")));
+        assertTrue(Files.exists(Path.of("playlists.json.migrated")));
+        assertFalse(PlaylistIO.migratePlaylists(lib, journal), "Migrated only once");
+
+        lib.clearLibrary();
+        BinaryLibraryIO.load(lib, snapshot);
+        assertEquals(2, lib.getAllPlaylists().size());
+        assertEquals("Migrated Song", lib.findPlaylist("Old").getSong(0).getTitle());
+        Files.deleteIfExists(Path.of("playlists.json.migrated"));
+        lib.clearLibrary();
     }
 }
@@ -0,0 +1,96 @@
+package utils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import models.MusicLibrary;
+
+public class TagCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void setup() {
+        MusicLibrary.getInstance().clearLibrary();
+    }
+
+    @Test
+    public void cachedTagsSurviveSaveAndLoadAndFollowRenames() throws Exception {
+        File cacheFile = dir.resolve("tag-cache.bin").toFile();
+        File original = Files.write(dir.resolve("original.mp3"), new byte[100_000]).toFile();
+        File untagged = Files.write(dir.resolve("untagged.mp3"), new byte[10]).toFile();
+        TagCache cache = new TagCache(cacheFile, 100);
+        cache.put(TagCache.fingerprint(original), new MusicImporter.ParsedTrack(original, "Tagged Title",
+                "Artist", "Album", "Jazz", 3, 241));
+        cache.put(TagCache.fingerprint(untagged), new MusicImporter.ParsedTrack(untagged, "untagged",
+                "Unknown Artist", "Unknown Album", "", 0, 0));
+        cache.save();
+
+        File moved = Files.move(original.toPath(), Files.createDirectory(dir.resolve("moved")).resolve("renamed.mp3"))
+                .toFile();
+        File renamed = Files.move(untagged.toPath(), dir.resolve("renamed-untagged.mp3")).toFile();
+        TagCache reloaded = new TagCache(cacheFile, 100);
+        assertEquals(2, reloaded.size());
+
+        MusicImporter.ParsedTrack track = reloaded.get(TagCache.fingerprint(moved), moved);
+        assertNotNull(track);
+        assertEquals(moved, track.file);
+        assertEquals("Tagged Title", track.title);
+        assertEquals("Artist", track.artistName);
+        assertEquals("Jazz", track.genre);
+        assertEquals(3, track.trackNumber);
+        assertEquals(241, track.durationSeconds);
+        // A title that came from the file name follows the new name
+        assertEquals("renamed-untagged", reloaded.get(TagCache.fingerprint(renamed), renamed).title);
+    }
+
+    @Test
+    public void changedContentIsNotServedFromTheCache() throws Exception {
+        Path path = Files.write(dir.resolve("song.mp3"), new byte[200_000]);
+        long modified = path.toFile().lastModified();
+        TagCache.Fingerprint before = TagCache.fingerprint(path.toFile());
+
+        // Same size and modification time, different tail (e.g. an ID3v1 tag rewritten in place)
+        byte[] edited = new byte[200_000];
+        edited[edited.length - 1] = 1;
+        Files.write(path, edited);
+        path.toFile().setLastModified(modified);
+
+        TagCache cache = new TagCache(dir.resolve("tag-cache.bin").toFile(), 100);
+        cache.put(before, new MusicImporter.ParsedTrack(path.toFile(), "Old", "A", "B", "", 0, 0));
+        assertNotEquals(before, TagCache.fingerprint(path.toFile()));
+        assertNull(cache.get(TagCache.fingerprint(path.toFile()), path.toFile()));
+        assertNull(TagCache.fingerprint(dir.resolve("missing.mp3").toFile()));
+    }
+
+    @Test
+    public void reimportingMovedFilesSkipsTagParsing() throws Exception {
+        Path first = Files.createDirectory(dir.resolve("first"));
+        for (int i = 0; i < 5; i++) {
+            Files.write(first.resolve("cached" + i + ".mp3"), new byte[] { 7, 7, (byte) i });
+        }
+        MusicImporter.importFromDirectoryResult(first.toFile(), 2);
+        Metrics.Counter hits = Metrics.getInstance().counter("import_tag_cache_hits_total", "");
+        long hitsBefore = hits.getCount();
+
+        MusicLibrary.getInstance().clearLibrary();
+        Path second = Files.move(first, dir.resolve("second"));
+        ImportResult result = MusicImporter.importFromDirectoryResult(second.toFile(), 2);
+
+        assertEquals(5, result.successCount());
+        assertEquals(hitsBefore + 5, hits.getCount());
+        assertNotNull(MusicLibrary.getInstance().findSongByPath(second.resolve("cached3.mp3").toFile().getAbsolutePath()));
+        assertEquals("cached3", MusicLibrary.getInstance()
+                .findSongByPath(second.resolve("cached3.mp3").toFile().getAbsolutePath()).getTitle());
+    }
+}
@@ -0,0 +1,74 @@
+package views;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+public class ListDiffTest {
+
+    @Test
+    public void smallEditsTouchOnlyTheChangedItems() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            items.add("item " + i);
+        }
+        ObservableList<String> list = FXCollections.observableArrayList(items);
+        int[] changed = new int[1];
+        list.addListener((ListChangeListener<String>) change -> {
+            while (change.next()) {
+                changed[0] += change.getRemovedSize() + change.getAddedSize();
+            }
+        });
+
+        // Move one item to the front, drop another and add a new one in the middle
+        List<String> next = new ArrayList<>(items);
+        String moved = next.remove(7_000);
+        next.add(0, moved);
+        next.remove(5_000);
+        next.add(2_500, "new");
+
+        assertEquals(4, ListDiff.apply(list, next));
+        assertEquals(4, changed[0]);
+        assertEquals(next, list);
+        assertSame(moved, list.get(0));
+        assertEquals(0, ListDiff.apply(list, next));
+    }
+
+    @Test
+    public void randomEditsProduceTheTargetList() {
+        Random random = new Random(7);
+        List<Integer> pool = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            pool.add(Integer.valueOf(100_000 + i)); // distinct instances outside the Integer cache
+        }
+        for (int round = 0; round < 200; round++) {
+            List<Integer> before = new ArrayList<>(pool.subList(0, random.nextInt(pool.size())));
+            Collections.shuffle(before, random);
+            List<Integer> after = new ArrayList<>(before);
+            for (int edit = random.nextInt(20); edit > 0; edit--) {
+                int op = random.nextInt(3);
+                if (op == 0 && !after.isEmpty()) {
+                    after.remove(random.nextInt(after.size()));
+                } else if (op == 1 && !after.isEmpty()) {
+                    after.add(random.nextInt(after.size()), after.remove(random.nextInt(after.size())));
+                } else {
+                    Integer extra = pool.get(random.nextInt(pool.size()));
+                    if (!after.contains(extra)) {
+                        after.add(random.nextInt(after.size() + 1), extra);
+                    }
+                }
+            }
+            ObservableList<Integer> list = FXCollections.observableArrayList(before);
+            ListDiff.apply(list, after);
+            assertEquals(after, list);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package views;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import models.Song;
+
+public class PlaybackQueueTest {
+
+    private static List<Song> songs(int count) {
+        List<Song> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(new Song("Song " + i, null));
+        }
+        return list;
+    }
+
+    @Test
+    public void nextAndPreviousWalkTheSource() {
+        List<Song> list = songs(4);
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSource(list);
+
+        assertSame(list.get(0), queue.next());
+        assertSame(list.get(1), queue.next());
+        assertSame(list.get(2), queue.jumpTo(2));
+        assertSame(list.get(3), queue.peekNext());
+        assertSame(list.get(3), queue.next());
+        assertNull(queue.next(), "End of the source");
+        assertSame(list.get(3), queue.getCurrent());
+        assertEquals(3, queue.getCurrentIndex());
+
+        assertSame(list.get(2), queue.previous());
+        assertSame(list.get(1), queue.previous());
+        assertSame(list.get(0), queue.previous());
+        assertNull(queue.previous(), "Nothing before the first song");
+        assertSame(list.get(1), queue.next());
+    }
+
+    @Test
+    public void upNextPlaysBeforeTheSourceContinues() {
+        List<Song> list = songs(3);
+        Song queued = new Song("Queued", null);
+        Song urgent = new Song("Urgent", null);
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSource(list);
+        queue.jumpTo(0);
+        queue.enqueue(queued);
+        queue.enqueueFirst(urgent);
+
+        assertSame(urgent, queue.peekNext());
+        assertSame(urgent, queue.next());
+        assertSame(queued, queue.next());
+        assertEquals(-1, queue.getCurrentIndex());
+        assertSame(list.get(1), queue.next());
+
+        // Going back to a queued song and forward again does not skip anything
+        assertSame(queued, queue.previous());
+        assertSame(list.get(1), queue.next());
+        assertSame(queued, queue.previous());
+        assertSame(urgent, queue.previous());
+        assertSame(queued, queue.next());
+        assertSame(list.get(1), queue.next());
+        assertSame(list.get(2), queue.next());
+    }
+
+    @Test
+    public void cursorFollowsEditsToTheLiveSource() {
+        List<Song> list = songs(5);
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSource(list);
+        queue.play(list.get(2), 2);
+
+        list.add(0, new Song("Inserted", null));
+        assertSame(list.get(4), queue.peekNext(), "Current song moved down by one");
+        Song current = list.remove(3);
+        assertSame(current, queue.getCurrent());
+        assertSame(list.get(3), queue.next(), "The song after the removed current one plays next");
+
+        List<Song> playlist = new ArrayList<>(list.subList(2, 5));
+        queue.setSource(playlist);
+        assertEquals(1, queue.getCurrentIndex(), "Current song found in the new source");
+        assertSame(playlist.get(2), queue.peekNext());
+    }
+
+    @Test
+    public void followPlayerAdvancesOnGaplessContinuation() {
+        List<Song> list = songs(3);
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSource(list);
+        queue.jumpTo(0);
+
+        queue.followPlayer(list.get(1));
+        assertEquals(1, queue.getCurrentIndex());
+        queue.followPlayer(list.get(1));
+        assertEquals(1, queue.getCurrentIndex());
+        queue.followPlayer(list.get(0));
+        assertEquals(0, queue.getCurrentIndex());
+        assertSame(list.get(1), queue.previous());
+    }
+
+    @Test
+    public void shufflePlaysEverySongOnceAndStepsBackThroughWhatWasPlayed() {
+        List<Song> list = songs(50);
+        List<Song> original = new ArrayList<>(list);
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSource(list);
+        queue.jumpTo(7);
+        queue.setShuffle(true, new Random(42));
+
+        List<Song> played = new ArrayList<>();
+        Set<Song> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 49; i++) {
+            Song predicted = queue.peekNext();
+            Song song = queue.next();
+            assertSame(predicted, song);
+            assertNotSame(list.get(7), song, "The song playing when the shuffle started is not repeated");
+            assertTrue(seen.add(song), "No song is played twice");
+            played.add(song);
+        }
+        assertNull(queue.next(), "Every song was played");
+        assertEquals(original, list, "The source is not reordered");
+
+        assertSame(played.get(47), queue.previous());
+        assertSame(played.get(46), queue.previous());
+        assertSame(played.get(45), queue.previous());
+        assertSame(played.get(46), queue.next());
+        assertSame(played.get(47), queue.next());
+        assertSame(played.get(48), queue.next());
+        assertEquals(list.indexOf(played.get(48)), queue.getCurrentIndex());
+    }
+
+    @Test
+    public void shuffleIncludesSongsAddedDuringPlayback() {
+        List<Song> list = songs(10);
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSource(list);
+        queue.setShuffle(true, new Random(7));
+
+        Set<Song> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 5; i++) {
+            seen.add(queue.next());
+        }
+        list.addAll(songs(5));
+        Song song;
+        while ((song = queue.next()) != null) {
+            assertTrue(seen.add(song));
+        }
+        assertEquals(15, seen.size());
+        assertTrue(seen.containsAll(list));
+
+        queue.setShuffle(false);
+        queue.jumpTo(3);
+        assertSame(list.get(4), queue.next(), "Sequential again once shuffle is off");
+    }
+
+    @Test
+    public void lazyShuffleIsAPermutationForAnySize() {
+        for (int size = 0; size < 40; size++) {
+            LazyShuffle shuffle = new LazyShuffle(new Random(size), -1);
+            Set<Integer> drawn = new HashSet<>();
+            for (int i = 0; i < size; i++) {
+                int index = shuffle.next(size);
+                assertTrue(index >= 0 && index < size && drawn.add(index));
+            }
+            assertEquals(-1, shuffle.next(size));
+        }
+        // Starting over a huge list draws without touching the other indexes
+        LazyShuffle big = new LazyShuffle(new Random(1), 0);
+        int index = big.next(1_000_000);
+        assertTrue(index > 0 && index < 1_000_000);
+    }
+
+    @Test
+    public void lazyShuffleDrawsEveryRemainingIndexAfterTheListShrinks() {
+        for (int seed = 0; seed < 50; seed++) {
+            LazyShuffle shuffle = new LazyShuffle(new Random(seed), 3);
+            Set<Integer> drawn = new HashSet<>();
+            drawn.add(3);
+            for (int i = 0; i < 5; i++) {
+                assertTrue(drawn.add(shuffle.next(10)));
+            }
+            shuffle.peek(10); // may hold an index the shrink puts out of range
+            for (int index = shuffle.next(6); index != -1; index = shuffle.next(6)) {
+                assertTrue(index < 6 && drawn.add(index), "Index " + index + " drawn once, below the new size");
+            }
+            for (int index = 0; index < 6; index++) {
+                assertTrue(drawn.contains(index), "Index " + index + " was never drawn");
+            }
+        }
+    }
+}